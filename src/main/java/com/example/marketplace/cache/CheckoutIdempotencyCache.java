@@ -0,0 +1,80 @@
+package com.example.marketplace.cache;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.marketplace.dto.CheckoutResult;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+// Recent checkouts by client-supplied idempotency key. The first request for a key runs the checkout; requests
+// with the same key that arrive while it is running wait for it, and later ones get its result back. Only
+// successful results are kept: a failed checkout changed nothing, so running it again is safe.
+@Component
+public class CheckoutIdempotencyCache {
+
+    private final Cache<Key, CompletableFuture<CheckoutResult>> cache;
+
+    public CheckoutIdempotencyCache(
+            @Value("${marketplace.checkout-idempotency.maximum-size:10000}") long maximumSize,
+            @Value("${marketplace.checkout-idempotency.ttl:PT24H}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        // Written once per key and never refreshed, so a replay window is measured from the original checkout
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "checkoutIdempotency");
+    }
+
+    // Keys are scoped to the cart, so one key sent for two different carts checks out both
+    public CheckoutResult checkout(UUID cartId, String idempotencyKey, Supplier<CheckoutResult> checkout) {
+        Key key = new Key(cartId, idempotencyKey);
+        ConcurrentMap<Key, CompletableFuture<CheckoutResult>> entries = cache.asMap();
+        CompletableFuture<CheckoutResult> attempt = new CompletableFuture<>();
+        CompletableFuture<CheckoutResult> first = entries.putIfAbsent(key, attempt);
+        if (first != null) {
+            return await(first);
+        }
+
+        CheckoutResult result;
+        try {
+            result = checkout.get();
+        } catch (RuntimeException e) {
+            // Removed before completing, so a request arriving after the waiters are released starts afresh
+            entries.remove(key, attempt);
+            attempt.completeExceptionally(e);
+            throw e;
+        }
+        if (!result.isSuccess()) {
+            entries.remove(key, attempt);
+        }
+        attempt.complete(result);
+        return result;
+    }
+
+    private static CheckoutResult await(CompletableFuture<CheckoutResult> first) {
+        try {
+            return first.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Key(UUID cartId, String idempotencyKey) {
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.marketplace.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.marketplace.entity.Product;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Component
+public class ProductCache {
+
+    private final Cache<UUID, Product> cache;
+
+    public ProductCache(
+            @Value("${marketplace.product-cache.maximum-size:10000}") long maximumSize,
+            @Value("${marketplace.product-cache.ttl:PT5M}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+
+    public Optional<Product> get(UUID id, Function<UUID, Optional<Product>> loader) {
+        // Misses are not cached, so a product created later is picked up on the next read
+        return Optional.ofNullable(cache.get(id, key -> loader.apply(key).map(ProductCache::snapshot).orElse(null)));
+    }
+
+    public Map<UUID, Product> getAll(Collection<UUID> ids, Function<Set<UUID>, Map<UUID, Product>> loader) {
+        // Only the ids not already cached reach the loader, in a single call; ids it cannot find are left out
+        return cache.getAll(ids, missing -> {
+            Map<UUID, Product> loaded = new HashMap<>();
+            loader.apply(Set.copyOf(missing)).forEach((id, product) -> loaded.put(id, snapshot(product)));
+            return loaded;
+        });
+    }
+
+    public void evict(UUID id) {
+        cache.invalidate(id);
+        // Evict again once the writing transaction ends, so a read that raced the commit cannot keep the old stock
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    // Cached entries are shared between requests, so never hand out an instance owned by a persistence context
+    private static Product snapshot(Product product) {
+        return new Product(product.getId(), product.getName(), product.getPrice(),
+                product.getDescription(), product.getStock());
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.marketplace.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+@Component
+public class SessionCartCache {
+
+    private final Cache<String, UUID> cache;
+
+    public SessionCartCache(
+            @Value("${marketplace.session-cart-cache.maximum-size:100000}") long maximumSize,
+            @Value("${marketplace.session-cart-cache.ttl:PT30M}") Duration ttl,
+            MeterRegistry meterRegistry) {
+        // Idle-based expiry, matching how long an HTTP session lives without requests
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "sessionCarts");
+    }
+
+    public Optional<UUID> get(String sessionId) {
+        return Optional.ofNullable(cache.getIfPresent(sessionId));
+    }
+
+    public void put(String sessionId, UUID cartId) {
+        cache.put(sessionId, cartId);
+    }
+
+    public void evict(String sessionId) {
+        cache.invalidate(sessionId);
+    }
+
+    public void evictAll(Collection<String> sessionIds) {
+        cache.invalidateAll(sessionIds);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.marketplace.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Background jobs such as CartReaper
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
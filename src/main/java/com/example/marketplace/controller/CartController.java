@@ -1,6 +1,8 @@
 package com.example.marketplace.controller;
 
+import java.net.URI;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,13 +11,19 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.example.marketplace.dto.AddToCartBatchRequest;
 import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CartSummary;
+import com.example.marketplace.dto.CartView;
+import com.example.marketplace.dto.CheckoutJobView;
 import com.example.marketplace.dto.CheckoutResult;
-import com.example.marketplace.entity.Cart;
 import com.example.marketplace.service.CartService;
+import com.example.marketplace.service.CheckoutJobService;
 
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
@@ -27,42 +35,72 @@ import lombok.RequiredArgsConstructor;
 public class CartController {
 	
     private final CartService cartService;
+    private final CheckoutJobService checkoutJobService;
 
     @GetMapping("/{id}")
-    public Cart getCart(@PathVariable UUID id) {
+    public CartView getCart(@PathVariable UUID id) {
         return cartService.getCart(id);
     }
     
     @PostMapping
-    public Cart createCart() {
+    public CartView createCart() {
     	return cartService.getCart(null);
     }
     
     @PostMapping("/{id}/add-product")
-    public Cart addProductToCart(
+    public CartView addProductToCart(
     		@PathVariable UUID id,
     		@Valid @RequestBody AddToCartRequest bodyDto) {
         return cartService.addProductToCart(id, bodyDto.getProductId(), bodyDto.getQuantity());
     }
     
+    @PostMapping("/{id}/add-products")
+    public CartView addProductsToCart(
+            @PathVariable UUID id,
+            @Valid @RequestBody AddToCartBatchRequest bodyDto) {
+        return cartService.addProductsToCart(id, bodyDto.getItems());
+    }
+    
     @PostMapping("/session/add-product")  
-    public Cart addProductToCartBySession(
+    public CartView addProductToCartBySession(
             HttpSession session,
             @Valid @RequestBody AddToCartRequest bodyDto) {
-        String sessionId = session.getId();
-        Cart cart = cartService.getOrCreateCartBySession(sessionId);
-        return cartService.addProductToCart(cart.getId(), bodyDto.getProductId(), bodyDto.getQuantity());
+        return cartService.addProductToCartBySession(session.getId(), bodyDto.getProductId(), bodyDto.getQuantity());
     }
     
     @GetMapping("/session")
-    public Cart getCartBySession(HttpSession session) {
+    public CartView getCartBySession(HttpSession session) {
         String sessionId = session.getId();
         return cartService.getOrCreateCartBySession(sessionId);
     }
     
+    @GetMapping("/{id}/summary")
+    public CartSummary getCartSummary(@PathVariable UUID id) {
+        return cartService.getCartSummary(id);
+    }
+    
+    // Backs the header badge on every page, so it answers from one aggregate query without loading the cart
+    @GetMapping("/session/summary")
+    public CartSummary getCartSummaryBySession(HttpSession session) {
+        return cartService.getCartSummaryBySession(session.getId());
+    }
+    
+    @DeleteMapping("/{id}/items")
+    public CartView clearCart(@PathVariable UUID id) {
+        return cartService.clearCart(id);
+    }
+    
+    @DeleteMapping("/session/items")
+    public CartView clearCartBySession(HttpSession session) {
+        return cartService.clearCartBySession(session.getId());
+    }
+    
+    // Clients that may resend (gateway retries, double clicks) pass the same Idempotency-Key on every attempt
     @DeleteMapping("/{id}/checkout")
-    public ResponseEntity<?> checkout(@PathVariable UUID id) {
-        CheckoutResult result = cartService.checkout(id);
+    public ResponseEntity<?> checkout(
+            @PathVariable UUID id,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        CheckoutResult result = cartService.checkout(id, idempotencyKey);
         
         if (result.isSuccess()) {
             return ResponseEntity.ok(result);
@@ -70,5 +108,25 @@ public class CartController {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(result);
         }
     }
+    
+    // Same checkout, queued instead of run on this thread; the job's status and result are at the Location
+    @PostMapping("/{id}/checkout-jobs")
+    public ResponseEntity<CheckoutJobView> submitCheckout(
+            @PathVariable UUID id,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        CheckoutJobView job = checkoutJobService.submit(id, idempotencyKey);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/carts/" + id + "/checkout-jobs/" + job.getId()))
+                .body(job);
+    }
+    
+    // waitSeconds > 0 turns this into a long poll that answers as soon as the job finishes
+    @GetMapping("/{id}/checkout-jobs/{jobId}")
+    public CompletableFuture<CheckoutJobView> getCheckoutJob(
+            @PathVariable UUID id,
+            @PathVariable UUID jobId,
+            @RequestParam(defaultValue = "0") int waitSeconds) {
+        return checkoutJobService.awaitJob(id, jobId, waitSeconds);
+    }
 
 }
\ No newline at end of file
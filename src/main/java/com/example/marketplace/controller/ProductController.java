@@ -1,17 +1,28 @@
 package com.example.marketplace.controller;
 
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.example.marketplace.entity.Product;
+import com.example.marketplace.dto.ProductLookup;
+import com.example.marketplace.dto.ProductPage;
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.service.ProductService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import lombok.RequiredArgsConstructor;
 
 import jakarta.validation.constraints.NotNull;
 import org.springframework.validation.annotation.Validated;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.UUID;
 
@@ -22,17 +33,54 @@ import java.util.UUID;
 public class ProductController {
 
     private final ProductService productService;
+    private final ObjectMapper objectMapper;
 
+    // Streams the whole catalog as a JSON array, writing each row as it is read
     @GetMapping
-    public List<Product> getAllProducts() {
-        return productService.getAllProducts();
+    public ResponseEntity<StreamingResponseBody> getAllProducts() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+                generator.writeStartArray();
+                productService.forEachProduct(product -> writeProduct(generator, product));
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @GetMapping(params = "limit")
+    public ProductPage getProductPage(
+            @RequestParam(required = false) UUID after,
+            @RequestParam int limit) {
+        return productService.getProducts(after, limit);
+    }
+
+    // One round trip for a set of products, e.g. everything in a cart
+    @GetMapping(params = "ids")
+    public ProductLookup getProductsByIds(@RequestParam List<UUID> ids) {
+        return productService.lookupProducts(ids);
+    }
+
+    @GetMapping("/search")
+    public List<ProductView> searchProducts(
+            @RequestParam(name = "q", required = false) String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return productService.searchProducts(query, limit);
     }
 
     @GetMapping("/{id}")
-    public Product getProductById(@PathVariable @NotNull UUID id) {
+    public ProductView getProductById(@PathVariable @NotNull UUID id) {
         if (id == null) {
             throw new IllegalArgumentException("Product ID cannot be null");
         }
-        return productService.findById(id);
+        return productService.getProduct(id);
+    }
+
+    private void writeProduct(JsonGenerator generator, ProductView product) {
+        try {
+            generator.writeObject(product);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
@@ -0,0 +1,19 @@
+package com.example.marketplace.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AddToCartBatchRequest {
+	@NotEmpty(message = "追加する商品を1件以上指定してください。")
+	@Size(max = 200, message = "一度に追加できる商品は200件までです。")
+	private List<@Valid AddToCartRequest> items;
+}
@@ -0,0 +1,24 @@
+package com.example.marketplace.dto;
+
+import java.util.UUID;
+
+import com.example.marketplace.money.Money;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CartLineView {
+    private UUID id;
+    private UUID productId;
+    private String productName;
+    private long unitPrice; // minor units, see Money
+    private int quantity;
+    private long lineTotal;
+
+    // Used by the JPQL projection; the line total is derived here with overflow-checked long arithmetic
+    public CartLineView(UUID id, UUID productId, String productName, long unitPrice, int quantity) {
+        this(id, productId, productName, unitPrice, quantity, Money.lineTotal(unitPrice, quantity));
+    }
+}
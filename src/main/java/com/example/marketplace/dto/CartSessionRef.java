@@ -0,0 +1,14 @@
+package com.example.marketplace.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Just enough of a cart to delete it and drop its session mapping
+@Data
+@AllArgsConstructor
+public class CartSessionRef {
+    private UUID id;
+    private String sessionId;
+}
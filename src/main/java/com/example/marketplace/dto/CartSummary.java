@@ -0,0 +1,15 @@
+package com.example.marketplace.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CartSummary {
+    private UUID cartId;
+    private long lineCount;
+    private long totalQuantity;
+    private long totalPrice; // minor units, see Money
+}
@@ -0,0 +1,29 @@
+package com.example.marketplace.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.example.marketplace.money.Money;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Response shape for a cart: flat lines with their totals instead of the Cart -> CartItem -> Product graph
+@Data
+@AllArgsConstructor
+public class CartView {
+    private UUID id;
+    private List<CartLineView> items;
+    private long totalQuantity;
+    private long total; // minor units, see Money
+
+    public static CartView of(UUID cartId, List<CartLineView> items) {
+        long totalQuantity = 0;
+        long total = 0;
+        for (CartLineView item : items) {
+            totalQuantity += item.getQuantity();
+            total = Money.add(total, item.getLineTotal());
+        }
+        return new CartView(cartId, items, totalQuantity, total);
+    }
+}
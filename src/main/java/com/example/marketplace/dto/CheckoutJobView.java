@@ -0,0 +1,20 @@
+package com.example.marketplace.dto;
+
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Where an asynchronous checkout has got to; result is filled in once it is SUCCEEDED or FAILED
+@Data
+@AllArgsConstructor
+public class CheckoutJobView {
+    private UUID id;
+    private UUID cartId;
+    private Status status;
+    private CheckoutResult result;
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+}
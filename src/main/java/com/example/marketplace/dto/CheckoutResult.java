@@ -1,6 +1,7 @@
 package com.example.marketplace.dto;
 
 import java.util.List;
+import java.util.UUID;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -11,16 +12,18 @@ public class CheckoutResult {
     private boolean success;
     private String message;
     private List<String> errors;
+    private Long total; // amount charged in minor units, see Money; null when checkout failed
+    private UUID orderId; // null when checkout failed
     
-    public static CheckoutResult success(String message) {
-        return new CheckoutResult(true, message, null);
+    public static CheckoutResult success(String message, long total, UUID orderId) {
+        return new CheckoutResult(true, message, null, total, orderId);
     }
     
     public static CheckoutResult failure(String message, List<String> errors) {
-        return new CheckoutResult(false, message, errors);
+        return new CheckoutResult(false, message, errors, null, null);
     }
     
     public static CheckoutResult failure(String message) {
-        return new CheckoutResult(false, message, null);
+        return new CheckoutResult(false, message, null, null, null);
     }
 }
@@ -0,0 +1,14 @@
+package com.example.marketplace.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ProductLookup {
+    private List<ProductView> items;
+    private List<UUID> missingIds;
+}
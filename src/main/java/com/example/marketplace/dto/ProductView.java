@@ -0,0 +1,24 @@
+package com.example.marketplace.dto;
+
+import java.util.UUID;
+
+import com.example.marketplace.entity.Product;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Response shape for a product; filled by constructor-expression queries, so no entity is involved
+@Data
+@AllArgsConstructor
+public class ProductView {
+    private UUID id;
+    private String name;
+    private long price; // minor units, see Money
+    private String description;
+    private int stock;
+
+    public static ProductView from(Product product) {
+        return new ProductView(product.getId(), product.getName(), product.getPrice(),
+                product.getDescription(), product.getStock());
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.marketplace.entity;
+
+import java.util.UUID;
+
+import org.hibernate.annotations.UuidGenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+// One movement of a hot product's units between its row and memory: positive when claimed from the row, negative
+// when sold from memory or given back. Per product they add up to what memory holds, see HotSkuInventory
+@Entity
+@Table(name = "hot_sku_allotments", indexes = @Index(name = "idx_hot_sku_allotments_product_id", columnList = "product_id"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotSkuAllotment {
+	@Id
+	@UuidGenerator(algorithm = UuidV7Generator.class)
+	private UUID id;
+	
+	@Column(name = "product_id", nullable = false)
+	private UUID productId;
+	
+	private int units;
+}
@@ -0,0 +1,62 @@
+package com.example.marketplace.entity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Persistable;
+
+import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.OneToMany;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "orders", indexes = @Index(name = "idx_orders_placed_at", columnList = "placed_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Order implements Persistable<UUID> {
+	// Assigned at checkout and carried through the order journal, so a replayed order keeps its id
+	@Id
+	private UUID id;
+	
+	@Column(name = "cart_id", nullable = false)
+	private UUID cartId;
+	
+	@Column(name = "placed_at", nullable = false)
+	private LocalDateTime placedAt;
+	
+	private long total; // minor units, see Money
+	
+	@OneToMany(mappedBy = "order", cascade = CascadeType.ALL)
+	private List<OrderLine> lines = new ArrayList<>();
+	
+	// The id is assigned, so Spring Data cannot tell a new order from a stored one by it; without this every
+	// save would be a merge with a select in front of the insert
+	@Transient
+	private boolean persisted;
+	
+	@Override
+	public boolean isNew() {
+		return !persisted;
+	}
+	
+	@PostPersist
+	@PostLoad
+	void markPersisted() {
+		persisted = true;
+	}
+}
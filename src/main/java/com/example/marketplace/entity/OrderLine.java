@@ -0,0 +1,48 @@
+package com.example.marketplace.entity;
+
+import java.util.UUID;
+
+import org.hibernate.annotations.UuidGenerator;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "order_lines")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderLine {
+	@Id
+	@UuidGenerator(algorithm = UuidV7Generator.class)
+	private UUID id;
+	
+	@ManyToOne(fetch = FetchType.LAZY)
+	@JoinColumn(name = "order_id", nullable = false)
+	private Order order;
+	
+	// Plain values rather than a product reference: the line stays as sold when the product changes or is removed
+	@Column(name = "product_id", nullable = false)
+	private UUID productId;
+	
+	@Column(name = "product_name", nullable = false)
+	private String productName;
+	
+	@Column(name = "unit_price", nullable = false)
+	private long unitPrice; // minor units, see Money
+	
+	private int quantity;
+	
+	@Column(name = "line_total", nullable = false)
+	private long lineTotal;
+}
@@ -2,11 +2,16 @@ package com.example.marketplace.entity;
 
 import java.util.UUID;
 
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.UuidGenerator;
 
+import com.example.marketplace.search.ProductSearchIndexListener;
+
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
@@ -16,23 +21,33 @@ import lombok.Setter;
 
 @Entity
 @Table(name = "products")
+@EntityListeners(ProductSearchIndexListener.class)
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Product {
 	@Id
-	@UuidGenerator
+	@UuidGenerator(algorithm = UuidV7Generator.class)
 	private UUID id;
 
 	@NotBlank(message = "商品名は空欄にできません。")
 	private String name;
 
 	@Min(value = 1, message = "価格は0より大きい値である必要があります。")
-	private double price;
+	private long price; // minor units, see Money
 
 	private String description;
 
 	@Min(value = 0, message = "在庫をマイナスにすることはできません。")
 	private int stock;
+
+	// Bumped by every write, bulk stock updates included, so a stale copy cannot overwrite a newer row
+	@Version
+	@ColumnDefault("0")
+	private long version;
+
+	public Product(UUID id, String name, long price, String description, int stock) {
+		this(id, name, price, description, stock, 0);
+	}
 }
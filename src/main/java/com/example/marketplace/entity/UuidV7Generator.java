@@ -0,0 +1,35 @@
+package com.example.marketplace.entity;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.uuid.UuidValueGenerator;
+
+// Time-ordered ids (RFC 9562 version 7): 48-bit Unix millis, 12-bit counter, 62 random bits.
+// New ids sort after older ones, so inserts append at the right edge of the primary key index
+// instead of splitting random pages. Use with @UuidGenerator(algorithm = UuidV7Generator.class).
+public class UuidV7Generator implements UuidValueGenerator {
+
+    // Cart ids are handed to clients, so the random part must stay unguessable
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // (millis << 12 | counter) of the last id issued by this JVM
+    private static final AtomicLong LAST_STAMP = new AtomicLong();
+
+    @Override
+    public UUID generateUuid(SharedSessionContractImplementor session) {
+        return next();
+    }
+
+    // Also used for rows inserted by native statements, which bypass the entity generator
+    public static UUID next() {
+        long now = System.currentTimeMillis() << 12;
+        // Strictly increasing: a burst of more than 4096 ids in one millisecond borrows from the next one
+        long stamp = LAST_STAMP.updateAndGet(last -> Math.max(now, last + 1));
+        long mostSigBits = (stamp >>> 12) << 16 | 0x7000L | (stamp & 0xFFFL);
+        long leastSigBits = RANDOM.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.marketplace.exception;
+
+// Thrown when the asynchronous checkout queue is at capacity; the client should retry later
+public class CheckoutQueueFullException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public CheckoutQueueFullException(String message) {
+		super(message);
+	}
+}
@@ -0,0 +1,369 @@
+package com.example.marketplace.inventory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.cache.ProductCache;
+import com.example.marketplace.entity.HotSkuAllotment;
+import com.example.marketplace.repository.HotSkuAllotmentRepository;
+import com.example.marketplace.repository.ProductRepository;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Stock for products flagged as hot is sold from striped in-memory counters instead of one UPDATE per checkout
+// on the same products row. A background refiller keeps the counters topped up by moving an allotment out of the
+// row in its own committed transaction. A product that sold nothing since the last flush has what is left moved
+// back to its row, and at shutdown every product does. A
+// checkout never waits for a refill: what the counters cannot cover, it decrements from the row in its own
+// transaction, like any other product. The row therefore never claims more than is really there, so nothing is
+// oversold. Every move is also written to hot_sku_allotments in the transaction that makes it: claims and flushes
+// in their own, sales in the checkout's. What the counters held when the process died is thus on record, and goes
+// back to the rows at startup. Like the other in-memory state here, this assumes one instance per database.
+@Slf4j
+@Component
+public class HotSkuInventory {
+
+    private final Set<UUID> hotProductIds;
+    private final int allotment;
+    private final ProductRepository productRepository;
+    private final HotSkuAllotmentRepository allotmentRepository;
+    private final ProductCache productCache;
+    private final TransactionTemplate ownTransaction;
+    private final Executor refiller;
+    private final ConcurrentHashMap<UUID, StripedStock> stocks = new ConcurrentHashMap<>();
+    private final int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    @Autowired
+    public HotSkuInventory(
+            ProductRepository productRepository,
+            HotSkuAllotmentRepository allotmentRepository,
+            ProductCache productCache,
+            PlatformTransactionManager transactionManager,
+            @Value("${marketplace.hot-skus.product-ids:}") Set<UUID> hotProductIds,
+            @Value("${marketplace.hot-skus.allotment:50}") int allotment,
+            MeterRegistry meterRegistry) {
+        // One thread is enough: it only moves allotments, and holds a single connection while it does
+        this(productRepository, allotmentRepository, productCache, transactionManager, hotProductIds, allotment, meterRegistry,
+                Executors.newSingleThreadExecutor(Thread.ofPlatform().name("hot-sku-refiller").daemon().factory()));
+    }
+
+    HotSkuInventory(
+            ProductRepository productRepository,
+            HotSkuAllotmentRepository allotmentRepository,
+            ProductCache productCache,
+            PlatformTransactionManager transactionManager,
+            Set<UUID> hotProductIds,
+            int allotment,
+            MeterRegistry meterRegistry,
+            Executor refiller) {
+        this.productRepository = productRepository;
+        this.allotmentRepository = allotmentRepository;
+        this.productCache = productCache;
+        this.hotProductIds = Set.copyOf(hotProductIds);
+        this.allotment = allotment;
+        this.refiller = refiller;
+        // Claims and returns commit on their own, on the refiller and flush threads, never inside a checkout
+        this.ownTransaction = new TransactionTemplate(transactionManager);
+        this.ownTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Gauges the counters themselves rather than this, which is not fully constructed yet
+        Gauge.builder("marketplace.hot-skus.allotted", stocks, counters -> counters.values().stream()
+                    .mapToLong(StripedStock::sum).sum())
+                .description("Units of hot products moved out of the products table into memory")
+                .register(meterRegistry);
+    }
+
+    public boolean isHot(UUID productId) {
+        return hotProductIds.contains(productId);
+    }
+
+    // Takes up to quantity units of a hot product from memory and returns how many it got. The caller takes the
+    // rest from the products row within its own transaction, and gives back what this returned if that fails.
+    // Asks the refiller for a new allotment once the counters run low, without waiting for it.
+    public int take(UUID productId, int quantity) {
+        StripedStock stock = stocks.computeIfAbsent(productId, id -> new StripedStock(stripes));
+        // Read first, so a busy product's flag is only written once per flush
+        if (!stock.demanded.get()) {
+            stock.demanded.set(true);
+        }
+        int taken = stock.tryTake(quantity) ? quantity : stock.takeUpTo(quantity);
+        if (taken < quantity || stock.sum() < allotment / 2) {
+            requestRefill(productId, stock);
+        }
+        return taken;
+    }
+
+    // Records units a checkout took from memory, in the checkout's transaction: once it commits they are sold and
+    // no longer on record as held, and a rollback takes the record with it
+    public void recordSold(Map<UUID, Integer> taken) {
+        Map<UUID, Integer> sold = new HashMap<>();
+        taken.forEach((productId, quantity) -> sold.put(productId, -quantity));
+        allotmentRepository.record(sold);
+    }
+
+    // Puts back units taken for a checkout that did not commit
+    public void giveBack(UUID productId, int quantity) {
+        stocks.computeIfAbsent(productId, id -> new StripedStock(stripes)).add(quantity);
+    }
+
+    // Units held in memory for the product, on top of what its row shows
+    public long allotted(UUID productId) {
+        StripedStock stock = stocks.get(productId);
+        return stock != null ? stock.sum() : 0;
+    }
+
+    // Folds the sales recorded since the last flush. A product still selling keeps its allotment in memory, rather
+    // than having it drained only for the refiller to claim it straight back; one that sold nothing since has its
+    // units moved back to its row, so product reads and restocks see the real figure again
+    @Scheduled(fixedDelayString = "${marketplace.hot-skus.flush-interval:PT5S}",
+            initialDelayString = "${marketplace.hot-skus.flush-interval:PT5S}")
+    public void flushAllotments() {
+        flush(false);
+    }
+
+    // Moves every unsold unit back to its row, whether or not the product is still selling
+    public void returnAllotments() {
+        flush(true);
+    }
+
+    // A product whose row cannot be updated keeps its units for the next flush; the others are still returned
+    private void flush(boolean returnAll) {
+        stocks.forEach((productId, stock) -> {
+            stock.refill.lock();
+            try {
+                boolean selling = stock.demanded.getAndSet(false) && !returnAll;
+                long onHand = selling ? 0 : stock.drain();
+                try {
+                    ownTransaction.executeWithoutResult(status -> {
+                        if (onHand > 0) {
+                            productRepository.incrementStock(productId, Math.toIntExact(onHand));
+                        }
+                        settle(productId, -Math.toIntExact(onHand));
+                    });
+                } catch (RuntimeException e) {
+                    stock.add(onHand);
+                    log.warn("Could not return {} units of hot product {} to its row; kept for the next flush",
+                            onHand, productId, e);
+                    return;
+                }
+                if (onHand > 0) {
+                    productCache.evict(productId);
+                }
+            } finally {
+                stock.refill.unlock();
+            }
+        });
+    }
+
+    // Units the counters held when the process last stopped without flushing are still on record; they go back to
+    // their rows before anything can be claimed again
+    @PostConstruct
+    public void recoverAllotments() {
+        Map<UUID, Integer> held = new HashMap<>();
+        ownTransaction.executeWithoutResult(status -> {
+            List<HotSkuAllotment> entries = allotmentRepository.findAll();
+            entries.forEach(entry -> held.merge(entry.getProductId(), entry.getUnits(), Integer::sum));
+            held.forEach((productId, units) -> {
+                if (units > 0 && productRepository.incrementStock(productId, units) == 0) {
+                    log.warn("Hot product {} is gone; {} units it had in memory are dropped", productId, units);
+                }
+            });
+            allotmentRepository.deleteAllInBatch(entries);
+        });
+        held.keySet().forEach(productCache::evict);
+    }
+
+    // The refiller stops first, so no allotment is claimed after the last flush
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (refiller instanceof ExecutorService executor) {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        returnAllotments();
+    }
+
+    // At most one refill per product is queued at a time
+    private void requestRefill(UUID productId, StripedStock stock) {
+        if (!stock.refillRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refiller.execute(() -> {
+                try {
+                    refill(productId, stock);
+                } catch (RuntimeException e) {
+                    log.warn("Could not refill hot product {}; checkouts take it from the row meanwhile", productId, e);
+                } finally {
+                    stock.refillRequested.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down; checkouts keep falling back to the row
+            stock.refillRequested.set(false);
+        }
+    }
+
+    // Tops the counters up to a full allotment. The lock keeps a flush from draining the counters halfway through
+    private void refill(UUID productId, StripedStock stock) {
+        stock.refill.lock();
+        try {
+            long wanted = allotment - stock.sum();
+            if (wanted > 0) {
+                stock.spread(claim(productId, Math.toIntExact(wanted)));
+            }
+        } finally {
+            stock.refill.unlock();
+        }
+    }
+
+    // Moves the wanted units out of the row, or as many as it still has when that is fewer. A guarded decrement
+    // that does not fit is retried with half the amount, so a nearly sold-out row is emptied in a few statements
+    private int claim(UUID productId, int wanted) {
+        int claimed = 0;
+        int quantity = wanted;
+        while (quantity > 0) {
+            if (decrementRow(productId, quantity)) {
+                claimed += quantity;
+                quantity = Math.min(quantity, wanted - claimed);
+            } else {
+                quantity /= 2;
+            }
+        }
+        return claimed;
+    }
+
+    private boolean decrementRow(UUID productId, int quantity) {
+        Boolean claimed = ownTransaction.execute(status -> {
+            if (productRepository.decrementStock(productId, quantity) == 0) {
+                return false;
+            }
+            allotmentRepository.record(Map.of(productId, quantity));
+            return true;
+        });
+        if (!Boolean.TRUE.equals(claimed)) {
+            return false;
+        }
+        productCache.evict(productId);
+        return true;
+    }
+
+    // Folds the product's entries and the given move into one, so recorded sales do not pile up. Only the entries
+    // read here are deleted; a sale that commits meanwhile stays on record as its own entry
+    private void settle(UUID productId, int units) {
+        List<HotSkuAllotment> entries = allotmentRepository.findByProductId(productId);
+        int held = units + entries.stream().mapToInt(HotSkuAllotment::getUnits).sum();
+        allotmentRepository.deleteAllInBatch(entries);
+        if (held != 0) {
+            allotmentRepository.save(new HotSkuAllotment(null, productId, held));
+        }
+    }
+
+    // A counter split across cache-line-padded cells; each thread starts at its own cell, so concurrent takes
+    // mostly CAS different lines and never wait for each other
+    static final class StripedStock {
+
+        // 16 longs = 128 bytes between cells, enough to keep neighbours off each other's cache line
+        private static final int PAD = 16;
+
+        private final AtomicLongArray cells;
+        private final int mask;
+
+        // Held by the refiller and the flush across their row updates; checkouts never take it. A lock rather
+        // than synchronized, because a thread blocking on JDBC inside a monitor would pin a virtual carrier
+        final ReentrantLock refill = new ReentrantLock();
+        final AtomicBoolean refillRequested = new AtomicBoolean();
+        // Set by any take since the last flush
+        final AtomicBoolean demanded = new AtomicBoolean();
+
+        StripedStock(int stripes) {
+            this.cells = new AtomicLongArray(stripes * PAD);
+            this.mask = stripes - 1;
+        }
+
+        boolean tryTake(int quantity) {
+            int start = (int) Thread.currentThread().threadId();
+            for (int i = 0; i <= mask; i++) {
+                int slot = ((start + i) & mask) * PAD;
+                long current = cells.get(slot);
+                while (current >= quantity) {
+                    if (cells.compareAndSet(slot, current, current - quantity)) {
+                        return true;
+                    }
+                    current = cells.get(slot);
+                }
+            }
+            return false;
+        }
+
+        // Takes what it can, up to quantity, from cell after cell
+        int takeUpTo(int quantity) {
+            int start = (int) Thread.currentThread().threadId();
+            int taken = 0;
+            for (int i = 0; i <= mask && taken < quantity; i++) {
+                int slot = ((start + i) & mask) * PAD;
+                long current = cells.get(slot);
+                while (current > 0) {
+                    long part = Math.min(current, quantity - taken);
+                    if (cells.compareAndSet(slot, current, current - part)) {
+                        taken += (int) part;
+                        break;
+                    }
+                    current = cells.get(slot);
+                }
+            }
+            return taken;
+        }
+
+        void add(long quantity) {
+            cells.getAndAdd(((int) Thread.currentThread().threadId() & mask) * PAD, quantity);
+        }
+
+        // Added rather than set, so units given back concurrently are kept
+        void spread(long quantity) {
+            long share = quantity / (mask + 1);
+            for (int i = 0; i <= mask; i++) {
+                cells.getAndAdd(i * PAD, i == 0 ? quantity - share * mask : share);
+            }
+        }
+
+        long drain() {
+            long drained = 0;
+            for (int i = 0; i <= mask; i++) {
+                drained += cells.getAndSet(i * PAD, 0);
+            }
+            return drained;
+        }
+
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i <= mask; i++) {
+                sum += cells.get(i * PAD);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.marketplace.money;
+
+// Prices are stored and sent as a long count of minor units (two decimal places, e.g. 149999 = 1,499.99).
+// Totals are plain long arithmetic, so they are exact and allocate nothing; overflow throws instead of wrapping.
+public final class Money {
+
+    private Money() {
+    }
+
+    public static long lineTotal(long unitPrice, int quantity) {
+        return Math.multiplyExact(unitPrice, quantity);
+    }
+
+    public static long add(long total, long amount) {
+        return Math.addExact(total, amount);
+    }
+}
@@ -0,0 +1,280 @@
+package com.example.marketplace.order;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// An append-only log of byte records kept in fixed-size, memory-mapped segment files. An append is a memory copy
+// into the current segment; it reaches the disk when force() is called, which the owner does on a schedule, and
+// survives a crash of this process (though not of the machine) even before that. Each record is
+// [int length][int crc32][payload]. A zero length marks the end of what has been written, and END_OF_SEGMENT
+// a segment whose remaining space was too small for the next record.
+//
+// Readers follow the log from a checkpoint that they advance once they have dealt with the records before it;
+// the checkpoint is kept in its own file, and segments wholly before it are deleted.
+public class MappedJournal implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{12})\\.journal");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile Segment current;
+    // Written after the record's bytes, so a reader that sees a position also sees everything before it
+    private volatile Position end;
+    private volatile Position checkpoint;
+    private volatile boolean dirty;
+
+    public record Position(long segment, int offset) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position other) {
+            int bySegment = Long.compare(segment, other.segment);
+            return bySegment != 0 ? bySegment : Integer.compare(offset, other.offset);
+        }
+    }
+
+    // next is where the record after this one starts, and the checkpoint to store once this one is handled
+    public record Entry(byte[] payload, Position next) {
+    }
+
+    public MappedJournal(Path directory, int segmentSize) throws IOException {
+        if (segmentSize <= HEADER_BYTES) {
+            throw new IllegalArgumentException("segment size must exceed the record header");
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.checkpoint = readCheckpoint();
+
+        for (long index : segmentIndexes()) {
+            if (index < checkpoint.segment()) {
+                Files.deleteIfExists(segmentPath(index));
+            } else {
+                segments.put(index, openSegment(index));
+            }
+        }
+        if (segments.isEmpty()) {
+            long index = checkpoint.offset() == 0 ? checkpoint.segment() : checkpoint.segment() + 1;
+            segments.put(index, openSegment(index));
+            checkpoint = new Position(index, 0);
+        } else if (!segments.containsKey(checkpoint.segment())) {
+            checkpoint = new Position(segments.firstKey(), 0);
+        }
+        this.current = segments.lastEntry().getValue();
+        this.end = new Position(current.index(), recoverEnd(current));
+    }
+
+    // Returns the position just past the new record
+    public Position append(byte[] payload) {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (recordBytes > segmentSize) {
+            throw new IllegalArgumentException("record of " + payload.length + " bytes does not fit in a segment");
+        }
+        appendLock.lock();
+        try {
+            Segment segment = current;
+            int offset = end.offset();
+            if (offset + recordBytes > segment.buffer().capacity()) {
+                segment = roll(segment, offset);
+                offset = 0;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            MappedByteBuffer buffer = segment.buffer();
+            buffer.put(offset + HEADER_BYTES, payload);
+            buffer.putInt(offset + 4, (int) crc.getValue());
+            buffer.putInt(offset, payload.length);
+            Position next = new Position(segment.index(), offset + recordBytes);
+            end = next;
+            dirty = true;
+            return next;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // Up to max records from the given position, stopping at the end of what has been appended so far
+    public List<Entry> read(Position from, int max) {
+        Position stop = end;
+        List<Entry> entries = new ArrayList<>();
+        Position at = from;
+        while (entries.size() < max && at.compareTo(stop) < 0) {
+            Segment segment = segments.get(at.segment());
+            if (segment == null) {
+                Map.Entry<Long, Segment> later = segments.higherEntry(at.segment());
+                if (later == null) {
+                    break;
+                }
+                at = new Position(later.getKey(), 0);
+                continue;
+            }
+            ByteBuffer buffer = segment.buffer();
+            if (at.offset() + HEADER_BYTES > buffer.capacity() || buffer.getInt(at.offset()) == END_OF_SEGMENT) {
+                at = new Position(at.segment() + 1, 0);
+                continue;
+            }
+            int length = buffer.getInt(at.offset());
+            byte[] payload = new byte[length];
+            buffer.get(at.offset() + HEADER_BYTES, payload);
+            if (checksum(payload) != buffer.getInt(at.offset() + 4)) {
+                throw new IllegalStateException("corrupt journal record at " + at);
+            }
+            at = new Position(at.segment(), at.offset() + HEADER_BYTES + length);
+            entries.add(new Entry(payload, at));
+        }
+        return entries;
+    }
+
+    public Position checkpoint() {
+        return checkpoint;
+    }
+
+    // Just past the last record appended so far
+    public Position end() {
+        return end;
+    }
+
+    // Records before the position have been handled. Written to a temporary file and moved into place, so a crash
+    // leaves either the old checkpoint or the new one; the old one only means some records are read again
+    public void checkpoint(Position position) {
+        try {
+            Path temporary = directory.resolve("checkpoint.tmp");
+            Files.writeString(temporary, position.segment() + " " + position.offset(), StandardCharsets.US_ASCII);
+            Files.move(temporary, directory.resolve("checkpoint"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpoint = position;
+            for (Segment done : segments.headMap(position.segment()).values()) {
+                segments.remove(done.index());
+                done.channel().close();
+                Files.deleteIfExists(segmentPath(done.index()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Flushes appended records to the disk; cheap when nothing was appended since the last call
+    public void force() {
+        if (!dirty) {
+            return;
+        }
+        // Cleared first, so an append that lands during the flush is flushed next time
+        dirty = false;
+        current.buffer().force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            current.buffer().force();
+            for (Segment segment : segments.values()) {
+                segment.channel().close();
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    // The full segment is forced before the next one is started, so a later segment never outlives an earlier one
+    private Segment roll(Segment full, int offset) {
+        if (offset + 4 <= full.buffer().capacity()) {
+            full.buffer().putInt(offset, END_OF_SEGMENT);
+        }
+        full.buffer().force();
+        try {
+            Segment next = openSegment(full.index() + 1);
+            segments.put(next.index(), next);
+            current = next;
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Finds where the last segment's records stop. A record torn by a crash mid-append fails its checksum; it
+    // and anything after it are zeroed, so the next append starts from clean space
+    private static int recoverEnd(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer();
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == 0 || length == END_OF_SEGMENT) {
+                return offset;
+            }
+            boolean intact = length > 0 && length <= buffer.capacity() - offset - HEADER_BYTES;
+            if (intact) {
+                byte[] payload = new byte[length];
+                buffer.get(offset + HEADER_BYTES, payload);
+                intact = checksum(payload) == buffer.getInt(offset + 4);
+            }
+            if (!intact) {
+                buffer.put(offset, new byte[buffer.capacity() - offset]);
+                buffer.force();
+                return offset;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    // Existing segments keep the size they were created with
+    private Segment openSegment(long index) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(index),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size() > 0 ? channel.size() : segmentSize;
+        return new Segment(index, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    private Position readCheckpoint() throws IOException {
+        Path file = directory.resolve("checkpoint");
+        if (!Files.exists(file)) {
+            return new Position(0, 0);
+        }
+        String[] parts = Files.readString(file, StandardCharsets.US_ASCII).trim().split(" ");
+        return new Position(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private List<Long> segmentIndexes() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path segmentPath(long index) {
+        return directory.resolve(String.format("segment-%012d.journal", index));
+    }
+
+    private record Segment(long index, FileChannel channel, MappedByteBuffer buffer) {
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.marketplace.order;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+// Where checkouts record their orders. Appending is a memory copy into the mapped journal, with no database
+// round trip; OrderProjector copies the orders into the orders tables afterwards. The journal is synced to disk
+// every fsync-interval. With no directory configured it lives in a temporary directory that is removed on
+// shutdown, which matches the default in-memory database; point it at a real directory alongside a persistent one.
+// A checkout's order is appended just before its transaction commits, so a committed checkout is never missing
+// from the journal. Whether that commit then went through is kept in memory until the order is projected; orders
+// left from an earlier run have no such record and are in doubt until OrderProjector checks the database
+@Component
+public class OrderJournal {
+
+    public enum Outcome {
+        COMMITTED,
+        ROLLED_BACK,
+        // Appended, but the transaction has not finished committing yet
+        PENDING,
+        // Appended by an earlier run, or the transaction's outcome could not be told
+        IN_DOUBT
+    }
+
+    private final MappedJournal journal;
+    private final ObjectMapper objectMapper;
+    private final Path temporaryDirectory;
+    private final Counter appended;
+    // Records before this position were appended by an earlier run
+    private final MappedJournal.Position recoveredEnd;
+    private final Map<UUID, Outcome> outcomes = new ConcurrentHashMap<>();
+
+    public OrderJournal(
+            ObjectMapper objectMapper,
+            @Value("${marketplace.order-journal.directory:}") String directory,
+            @Value("${marketplace.order-journal.segment-size:64MB}") DataSize segmentSize,
+            MeterRegistry meterRegistry) throws IOException {
+        this.objectMapper = objectMapper;
+        this.temporaryDirectory = directory.isBlank() ? Files.createTempDirectory("order-journal") : null;
+        Path path = temporaryDirectory != null ? temporaryDirectory : Path.of(directory);
+        this.journal = new MappedJournal(path, Math.toIntExact(segmentSize.toBytes()));
+        this.recoveredEnd = journal.end();
+        this.appended = Counter.builder("marketplace.order-journal.appended")
+                .description("Orders written to the order journal")
+                .register(meterRegistry);
+    }
+
+    // Appends as the last step before the surrounding transaction commits: a failed append rolls the checkout
+    // back, and once the commit has happened there is nothing left that could fail it. A checkout that rolls back
+    // before reaching its commit leaves no order behind; without a transaction the order is appended straight away
+    public void appendOnCommit(PlacedOrder order) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(order);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean written;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                write(order);
+                written = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (!written) {
+                    outcomes.remove(order.id());
+                    return;
+                }
+                outcomes.put(order.id(), switch (status) {
+                    case STATUS_COMMITTED -> Outcome.COMMITTED;
+                    case STATUS_ROLLED_BACK -> Outcome.ROLLED_BACK;
+                    default -> Outcome.IN_DOUBT;
+                });
+            }
+        });
+    }
+
+    // Appends an order that is already final
+    public void append(PlacedOrder order) {
+        write(order);
+        outcomes.put(order.id(), Outcome.COMMITTED);
+    }
+
+    // The oldest orders not yet marked projected, each with what became of its checkout and the checkpoint that
+    // covers it
+    public List<JournaledOrder> readUnprojected(int max) {
+        return journal.read(journal.checkpoint(), max).stream()
+                .map(entry -> {
+                    PlacedOrder order = decode(entry.payload());
+                    Outcome outcome = entry.next().compareTo(recoveredEnd) <= 0
+                            ? Outcome.IN_DOUBT
+                            : outcomes.getOrDefault(order.id(), Outcome.PENDING);
+                    return new JournaledOrder(order, outcome, entry.next());
+                })
+                .toList();
+    }
+
+    // The orders are handled, so their outcomes are no longer needed
+    public void markProjected(MappedJournal.Position next, Collection<UUID> orderIds) {
+        journal.checkpoint(next);
+        orderIds.forEach(outcomes::remove);
+    }
+
+    private void write(PlacedOrder order) {
+        try {
+            journal.append(objectMapper.writeValueAsBytes(order));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("could not serialise order " + order.id(), e);
+        }
+        appended.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${marketplace.order-journal.fsync-interval:PT0.1S}")
+    public void fsync() {
+        journal.force();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        journal.close();
+        if (temporaryDirectory != null) {
+            try (Stream<Path> files = Files.list(temporaryDirectory)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(temporaryDirectory);
+        }
+    }
+
+    private PlacedOrder decode(byte[] payload) {
+        try {
+            return objectMapper.readValue(payload, PlacedOrder.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public record JournaledOrder(PlacedOrder order, Outcome outcome, MappedJournal.Position next) {
+    }
+}
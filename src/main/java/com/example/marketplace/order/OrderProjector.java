@@ -0,0 +1,129 @@
+package com.example.marketplace.order;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.entity.Order;
+import com.example.marketplace.entity.OrderLine;
+import com.example.marketplace.order.OrderJournal.JournaledOrder;
+import com.example.marketplace.order.OrderJournal.Outcome;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.repository.OrderRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Copies journaled orders into the orders and order_lines tables, a batch per transaction, then moves the
+// journal checkpoint past them. Only orders whose checkout committed are copied; the run stops at one whose
+// commit is still under way and picks it up next time. The first run happens as the application starts, so orders
+// journaled before a crash or shutdown but never projected are replayed before new ones. Whether those committed
+// is no longer known, so it is read from the database: a checkout deletes its cart in the same transaction, so an
+// order whose cart still exists was never committed, and one whose cart is gone is taken as committed.
+@Component
+public class OrderProjector {
+
+    private final OrderJournal orderJournal;
+    private final OrderRepository orderRepository;
+    private final CartRepository cartRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ReentrantLock projecting = new ReentrantLock();
+    private final Counter projected;
+    private final Counter discarded;
+
+    public OrderProjector(
+            OrderJournal orderJournal,
+            OrderRepository orderRepository,
+            CartRepository cartRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${marketplace.order-journal.projection-batch-size:200}") int batchSize,
+            MeterRegistry meterRegistry) {
+        this.orderJournal = orderJournal;
+        this.orderRepository = orderRepository;
+        this.cartRepository = cartRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.projected = Counter.builder("marketplace.order-journal.projected")
+                .description("Orders inserted into the orders tables from the journal")
+                .register(meterRegistry);
+        this.discarded = Counter.builder("marketplace.order-journal.discarded")
+                .description("Journaled orders skipped because their checkout did not commit")
+                .register(meterRegistry);
+    }
+
+    // Returns once the journal has been read to its current end
+    @Scheduled(fixedDelayString = "${marketplace.order-journal.projection-interval:PT0.2S}")
+    public void project() {
+        if (!projecting.tryLock()) {
+            return;
+        }
+        try {
+            List<JournaledOrder> batch = orderJournal.readUnprojected(batchSize);
+            while (!batch.isEmpty()) {
+                List<JournaledOrder> orders = batch.stream()
+                        .takeWhile(journaled -> journaled.outcome() != Outcome.PENDING)
+                        .toList();
+                if (orders.isEmpty()) {
+                    return;
+                }
+                transactionTemplate.executeWithoutResult(status -> insertNew(orders));
+                // Only after the commit: a failed batch is read again from the same checkpoint next time
+                orderJournal.markProjected(orders.get(orders.size() - 1).next(),
+                        orders.stream().map(journaled -> journaled.order().id()).toList());
+                if (orders.size() < batch.size()) {
+                    return;
+                }
+                batch = orderJournal.readUnprojected(batchSize);
+            }
+        } finally {
+            projecting.unlock();
+        }
+    }
+
+    // A crash after the insert but before the checkpoint moved replays orders that are already stored; they are
+    // skipped by id
+    private void insertNew(List<JournaledOrder> batch) {
+        List<JournaledOrder> committed = batch.stream().filter(this::committed).toList();
+        discarded.increment(batch.size() - committed.size());
+        if (committed.isEmpty()) {
+            return;
+        }
+        Set<UUID> existing = orderRepository.findExistingIds(committed.stream().map(journaled -> journaled.order().id()).toList());
+        List<Order> orders = committed.stream()
+                .map(JournaledOrder::order)
+                .filter(order -> !existing.contains(order.id()))
+                .map(OrderProjector::toEntity)
+                .toList();
+        orderRepository.saveAll(orders);
+        projected.increment(orders.size());
+    }
+
+    private boolean committed(JournaledOrder journaled) {
+        return switch (journaled.outcome()) {
+            case COMMITTED -> true;
+            case ROLLED_BACK -> false;
+            case IN_DOUBT -> !cartRepository.existsById(journaled.order().cartId());
+            case PENDING -> throw new IllegalStateException("order " + journaled.order().id() + " is still pending");
+        };
+    }
+
+    private static Order toEntity(PlacedOrder placed) {
+        Order order = new Order();
+        order.setId(placed.id());
+        order.setCartId(placed.cartId());
+        order.setPlacedAt(placed.placedAt());
+        order.setTotal(placed.total());
+        for (PlacedOrder.Line line : placed.lines()) {
+            order.getLines().add(new OrderLine(null, order, line.productId(), line.productName(),
+                    line.unitPrice(), line.quantity(), line.lineTotal()));
+        }
+        return order;
+    }
+}
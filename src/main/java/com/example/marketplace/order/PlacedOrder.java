@@ -0,0 +1,32 @@
+package com.example.marketplace.order;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.CartItem;
+import com.example.marketplace.entity.Product;
+import com.example.marketplace.money.Money;
+
+// An order as captured at checkout: what was in the cart, at the prices it was sold for. This is what the journal
+// stores, so it holds plain values only and reads the same however the products change later
+public record PlacedOrder(UUID id, UUID cartId, LocalDateTime placedAt, long total, List<Line> lines) {
+
+    public record Line(UUID productId, String productName, long unitPrice, int quantity, long lineTotal) {
+    }
+
+    // Totals are computed with Money, so a cart too large to add up fails here with ArithmeticException
+    public static PlacedOrder of(UUID id, Cart cart, LocalDateTime placedAt) {
+        List<Line> lines = new ArrayList<>();
+        long total = 0;
+        for (CartItem item : cart.getItems()) {
+            Product product = item.getProduct();
+            long lineTotal = Money.lineTotal(product.getPrice(), item.getQuantity());
+            lines.add(new Line(product.getId(), product.getName(), product.getPrice(), item.getQuantity(), lineTotal));
+            total = Money.add(total, lineTotal);
+        }
+        return new PlacedOrder(id, cart.getId(), placedAt, total, List.copyOf(lines));
+    }
+}
@@ -1,12 +1,18 @@
 package com.example.marketplace.repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.marketplace.dto.CartLineView;
 import com.example.marketplace.entity.Cart;
 import com.example.marketplace.entity.CartItem;
 import com.example.marketplace.entity.Product;
@@ -18,5 +24,42 @@ public interface CartItemRepository extends JpaRepository<CartItem, UUID> {
     
     List<CartItem> findByCart(Cart cart);
     
-    void deleteByCart(Cart cart);
+    // One DELETE statement; a derived deleteBy... would load every line and remove them one by one
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from CartItem ci where ci.cart.id = :cartId")
+    int deleteAllByCartId(@Param("cartId") UUID cartId);
+
+    // deleteAllByCartId for several carts in one statement
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from CartItem ci where ci.cart.id in :cartIds")
+    int deleteAllByCartIdIn(@Param("cartIds") Collection<UUID> cartIds);
+
+    @Query("""
+            select new com.example.marketplace.dto.CartLineView(
+                ci.id, p.id, p.name, p.price, ci.quantity)
+            from CartItem ci join ci.product p
+            where ci.cart.id = :cartId
+            order by p.name, p.id
+            """)
+    List<CartLineView> findLineViewsByCartId(@Param("cartId") UUID cartId);
+
+    // Inserts the line or adds to its quantity in one statement, only while the new quantity fits the stock.
+    // allotted is what HotSkuInventory holds in memory for the product on top of its row (0 for most products).
+    // Returns 0 when nothing was written (unknown product or not enough stock).
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query(value = """
+            MERGE INTO cart_items ci
+            USING (SELECT id, stock FROM products WHERE id = :productId) p
+            ON ci.cart_id = :cartId AND ci.product_id = p.id
+            WHEN MATCHED AND ci.quantity + :quantity <= p.stock + :allotted THEN
+                UPDATE SET quantity = ci.quantity + :quantity
+            WHEN NOT MATCHED AND :quantity <= p.stock + :allotted THEN
+                INSERT (id, cart_id, product_id, quantity) VALUES (:id, :cartId, p.id, :quantity)
+            """, nativeQuery = true)
+    int upsertQuantity(@Param("id") UUID id, @Param("cartId") UUID cartId,
+            @Param("productId") UUID productId, @Param("quantity") int quantity,
+            @Param("allotted") int allotted);
 }
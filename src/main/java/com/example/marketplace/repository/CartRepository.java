@@ -1,14 +1,99 @@
 package com.example.marketplace.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.marketplace.dto.CartSessionRef;
+import com.example.marketplace.dto.CartSummary;
 import com.example.marketplace.entity.Cart;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface CartRepository extends JpaRepository<Cart, UUID> {
     List<Cart> findBySessionId(String sessionId);
+
+    // Loads the cart, its items and their products in a single joined select
+    @EntityGraph(attributePaths = {"items", "items.product"})
+    Optional<Cart> findWithItemsAndProductsById(UUID id);
+
+    // findWithItemsAndProductsById for several carts in one select; missing ids are simply absent
+    @EntityGraph(attributePaths = {"items", "items.product"})
+    List<Cart> findAllWithItemsAndProductsByIdIn(Collection<UUID> ids);
+
+    // session_id is unique, so this is a single index probe
+    @Query("select c.id from Cart c where c.sessionId = :sessionId")
+    Optional<UUID> findIdBySessionId(@Param("sessionId") String sessionId);
+
+    // Aggregates the cart's lines in the database; no entity is loaded. Empty when the cart does not exist
+    @Query("""
+            select new com.example.marketplace.dto.CartSummary(
+                c.id, count(ci), coalesce(sum(ci.quantity), 0), coalesce(sum(ci.quantity * p.price), 0))
+            from Cart c left join c.items ci left join ci.product p
+            where c.id = :id
+            group by c.id
+            """)
+    Optional<CartSummary> findSummaryById(@Param("id") UUID id);
+
+    // Plain INSERT that bypasses the persistence context; a duplicate session fails on uk_carts_session_id
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO carts (id, session_id, created_at, updated_at) VALUES (:id, :sessionId, :now, :now)",
+            nativeQuery = true)
+    int insertCart(@Param("id") UUID id, @Param("sessionId") String sessionId, @Param("now") LocalDateTime now);
+
+    // Deletes only the cart row, without cascading through the items collection, and only if nothing has changed
+    // it since it was read at the given version; delete its lines first with CartItemRepository.deleteAllByCartId
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("delete from Cart c where c.id = :id and c.version = :version")
+    int deleteCartByIdAndVersion(@Param("id") UUID id, @Param("version") long version);
+
+    // Records activity for the idle-cart reaper and bumps the version, since line writes bypass the Cart entity
+    // and neither @UpdateTimestamp nor @Version would otherwise see them. Run it in the same transaction as
+    // the line write, so a checkout that read the old lines fails its version check
+    @Transactional
+    @Modifying
+    @Query("update versioned Cart c set c.updatedAt = :now where c.id = :id")
+    int touch(@Param("id") UUID id, @Param("now") LocalDateTime now);
+
+    // touch, but only if the cart is still at the version it was read at; 0 means another writer got there first.
+    // Pending line writes are flushed first, so rows are locked lines-then-cart like every other cart write
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update versioned Cart c set c.updatedAt = :now where c.id = :id and c.version = :version")
+    int touchAtVersion(@Param("id") UUID id, @Param("version") long version, @Param("now") LocalDateTime now);
+
+    // Oldest idle carts first, read off idx_carts_updated_at so each batch stops after the limit
+    @Query("""
+            select new com.example.marketplace.dto.CartSessionRef(c.id, c.sessionId)
+            from Cart c
+            where c.updatedAt < :cutoff
+            order by c.updatedAt
+            """)
+    List<CartSessionRef> findIdleCarts(@Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    // Re-checks the cutoff and locks the carts that are still idle, in id order, until the transaction ends. A cart
+    // touched after it was selected is left out; a touch that comes later waits, then finds the cart deleted
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("""
+            select new com.example.marketplace.dto.CartSessionRef(c.id, c.sessionId)
+            from Cart c
+            where c.id in :ids and c.updatedAt < :cutoff
+            order by c.id
+            """)
+    List<CartSessionRef> lockIdleCarts(@Param("ids") Collection<UUID> ids, @Param("cutoff") LocalDateTime cutoff);
 }
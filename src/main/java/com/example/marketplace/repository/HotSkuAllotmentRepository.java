@@ -0,0 +1,15 @@
+package com.example.marketplace.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.example.marketplace.entity.HotSkuAllotment;
+
+@Repository
+public interface HotSkuAllotmentRepository extends JpaRepository<HotSkuAllotment, UUID>, HotSkuAllotmentRepositoryCustom {
+
+    List<HotSkuAllotment> findByProductId(UUID productId);
+}
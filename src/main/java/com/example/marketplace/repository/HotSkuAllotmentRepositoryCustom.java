@@ -0,0 +1,10 @@
+package com.example.marketplace.repository;
+
+import java.util.Map;
+import java.util.UUID;
+
+public interface HotSkuAllotmentRepositoryCustom {
+
+    // Inserts one entry per product as a single JDBC batch, without going through the persistence context
+    void record(Map<UUID, Integer> units);
+}
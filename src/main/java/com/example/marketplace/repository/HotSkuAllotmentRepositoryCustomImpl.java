@@ -0,0 +1,31 @@
+package com.example.marketplace.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.marketplace.entity.UuidV7Generator;
+
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+class HotSkuAllotmentRepositoryCustomImpl implements HotSkuAllotmentRepositoryCustom {
+
+    private static final String INSERT_SQL = "INSERT INTO hot_sku_allotments (id, product_id, units) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Runs on every checkout that sells from memory, so it stays a plain batch on the checkout's connection
+    @Override
+    public void record(Map<UUID, Integer> units) {
+        if (units.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        units.forEach((productId, quantity) -> rows.add(new Object[] {UuidV7Generator.next(), productId, quantity}));
+        jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+    }
+}
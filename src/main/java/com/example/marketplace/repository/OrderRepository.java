@@ -0,0 +1,25 @@
+package com.example.marketplace.repository;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.example.marketplace.entity.Order;
+
+@Repository
+public interface OrderRepository extends JpaRepository<Order, UUID> {
+
+    @EntityGraph(attributePaths = "lines")
+    Optional<Order> findWithLinesById(UUID id);
+
+    // Which of the given orders are already stored; one primary-key probe per id, no entities loaded
+    @Query("select o.id from Order o where o.id in :ids")
+    Set<UUID> findExistingIds(@Param("ids") Collection<UUID> ids);
+}
@@ -1,10 +1,42 @@
 package com.example.marketplace.repository;
 
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.entity.Product;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 @Repository
-public interface ProductRepository extends JpaRepository<Product, UUID> {
+public interface ProductRepository extends JpaRepository<Product, UUID>, ProductRepositoryCustom {
+
+    String PRODUCT_VIEW = "select new com.example.marketplace.dto.ProductView(p.id, p.name, p.price, p.description, p.stock) from Product p ";
+
+    // Keyset pagination: the id is the stable sort key and the last id seen is the cursor
+    @Query(PRODUCT_VIEW + "order by p.id")
+    List<ProductView> findViewsOrderById(Limit limit);
+
+    @Query(PRODUCT_VIEW + "where p.id > :after order by p.id")
+    List<ProductView> findViewsAfterOrderById(@Param("after") UUID after, Limit limit);
+
+    @Query(PRODUCT_VIEW + "where p.id in :ids")
+    List<ProductView> findViewsByIdIn(@Param("ids") Collection<UUID> ids);
+
+    // Check and decrement in one statement; returns 0 when the product is missing or short of stock.
+    // "versioned" bumps the version column, so entity copies read before this update fail their next save
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update versioned Product p set p.stock = p.stock - :quantity where p.id = :id and p.stock >= :quantity")
+    int decrementStock(@Param("id") UUID id, @Param("quantity") int quantity);
+
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update versioned Product p set p.stock = p.stock + :quantity where p.id = :id")
+    int incrementStock(@Param("id") UUID id, @Param("quantity") int quantity);
 }
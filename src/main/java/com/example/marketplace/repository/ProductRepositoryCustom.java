@@ -0,0 +1,11 @@
+package com.example.marketplace.repository;
+
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.UUID;
+
+public interface ProductRepositoryCustom {
+
+    // Guarded decrement of every line as one JDBC batch, in key order; returns the ids that were not decremented
+    Set<UUID> decrementStockInOrder(SortedMap<UUID, Integer> quantities);
+}
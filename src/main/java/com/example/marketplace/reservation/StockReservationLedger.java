@@ -0,0 +1,181 @@
+package com.example.marketplace.reservation;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Soft holds on stock, taken when a product goes into a cart and given back on checkout, when the cart is
+// cleared or reaped, or when the hold times out. Available stock is physical stock minus active holds.
+// A product's holds are only read or changed inside ConcurrentHashMap.compute for that product, so adds
+// for different products never wait on each other and no lock covers the whole ledger. The cart index is
+// only changed inside that same compute, so it lists exactly the products a cart currently holds.
+@Component
+public class StockReservationLedger {
+
+    private final ConcurrentHashMap<UUID, ProductHolds> holdsByProduct = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<UUID, Set<UUID>> productsByCart = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final Clock clock;
+
+    @Autowired
+    public StockReservationLedger(@Value("${marketplace.stock-holds.ttl:PT15M}") Duration ttl) {
+        this(ttl, Clock.systemUTC());
+    }
+
+    StockReservationLedger(Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    // Adds quantity to the cart's hold on the product and restarts its timer, as long as every active hold
+    // still fits in stock. Returns false, leaving the ledger unchanged, when it would not.
+    public boolean hold(UUID productId, UUID cartId, int quantity, int stock) {
+        Instant now = clock.instant();
+        boolean[] held = new boolean[1];
+        holdsByProduct.compute(productId, (id, holds) -> {
+            ProductHolds current = holds != null ? holds : new ProductHolds();
+            current.purgeExpired(now, expired -> unindex(expired, productId));
+            held[0] = current.add(cartId, quantity, stock, now.plus(ttl));
+            if (held[0]) {
+                productsByCart.computeIfAbsent(cartId, cart -> ConcurrentHashMap.newKeySet()).add(productId);
+            }
+            return current.isEmpty() ? null : current;
+        });
+        return held[0];
+    }
+
+    // Gives back part of a hold, e.g. when the cart write it was taken for did not go through
+    public void unhold(UUID productId, UUID cartId, int quantity) {
+        Instant now = clock.instant();
+        holdsByProduct.computeIfPresent(productId, (id, holds) -> {
+            if (holds.reduce(cartId, quantity)) {
+                unindex(cartId, productId);
+            }
+            holds.purgeExpired(now, expired -> unindex(expired, productId));
+            return holds.isEmpty() ? null : holds;
+        });
+    }
+
+    public void releaseCart(UUID cartId) {
+        Set<UUID> productIds = productsByCart.remove(cartId);
+        if (productIds == null) {
+            return;
+        }
+        Instant now = clock.instant();
+        for (UUID productId : productIds) {
+            holdsByProduct.computeIfPresent(productId, (id, holds) -> {
+                holds.remove(cartId);
+                // A hold taken while this release ran may have indexed the cart again
+                unindex(cartId, productId);
+                holds.purgeExpired(now, expired -> unindex(expired, productId));
+                return holds.isEmpty() ? null : holds;
+            });
+        }
+    }
+
+    // Physical stock minus every active hold on the product
+    public int available(UUID productId, int stock) {
+        return stock - held(productId);
+    }
+
+    public int held(UUID productId) {
+        Instant now = clock.instant();
+        int[] held = new int[1];
+        holdsByProduct.computeIfPresent(productId, (id, holds) -> {
+            holds.purgeExpired(now, expired -> unindex(expired, productId));
+            held[0] = holds.held;
+            return holds.isEmpty() ? null : holds;
+        });
+        return held[0];
+    }
+
+    // Whether any product still carries a hold for the cart
+    public boolean holdsFor(UUID cartId) {
+        return productsByCart.containsKey(cartId);
+    }
+
+    // Called inside compute for the product once the cart holds none of it, dropping the cart's set with its last product
+    private void unindex(UUID cartId, UUID productId) {
+        productsByCart.computeIfPresent(cartId, (id, productIds) -> {
+            productIds.remove(productId);
+            return productIds.isEmpty() ? null : productIds;
+        });
+    }
+
+    private record Hold(UUID cartId, int quantity, Instant expiresAt) {
+    }
+
+    // Not thread safe on its own; only touched inside compute for its product
+    private static final class ProductHolds {
+
+        private final Map<UUID, Hold> byCart = new HashMap<>();
+        // Every hold ever taken, soonest expiry first; entries replaced in byCart are skipped when they surface
+        private final PriorityQueue<Hold> byExpiry = new PriorityQueue<>(Comparator.comparing(Hold::expiresAt));
+        private int held;
+
+        boolean add(UUID cartId, int quantity, int stock, Instant expiresAt) {
+            if (held + quantity > stock) {
+                return false;
+            }
+            Hold existing = byCart.get(cartId);
+            put(new Hold(cartId, (existing != null ? existing.quantity() : 0) + quantity, expiresAt));
+            held += quantity;
+            return true;
+        }
+
+        // Returns true when the cart's hold is used up
+        boolean reduce(UUID cartId, int quantity) {
+            Hold existing = byCart.get(cartId);
+            if (existing == null) {
+                return false;
+            }
+            int released = Math.min(quantity, existing.quantity());
+            held -= released;
+            if (released == existing.quantity()) {
+                byCart.remove(cartId);
+                return true;
+            }
+            put(new Hold(cartId, existing.quantity() - released, existing.expiresAt()));
+            return false;
+        }
+
+        void remove(UUID cartId) {
+            Hold existing = byCart.remove(cartId);
+            if (existing != null) {
+                held -= existing.quantity();
+            }
+        }
+
+        void purgeExpired(Instant now, Consumer<UUID> onExpired) {
+            while (!byExpiry.isEmpty() && !byExpiry.peek().expiresAt().isAfter(now)) {
+                Hold expired = byExpiry.poll();
+                if (byCart.get(expired.cartId()) == expired) {
+                    byCart.remove(expired.cartId());
+                    held -= expired.quantity();
+                    onExpired.accept(expired.cartId());
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return byCart.isEmpty();
+        }
+
+        private void put(Hold hold) {
+            byCart.put(hold.cartId(), hold);
+            byExpiry.add(hold);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.marketplace.retry;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Re-runs a unit of work that lost an optimistic version check, instead of taking row locks up front.
+// The action must start and finish its own transaction, so every attempt re-reads current state. Waits
+// between attempts are drawn uniformly from zero to an exponentially growing cap ("full jitter"), so
+// writers that collided once do not collide again in lockstep.
+@Component
+public class OptimisticRetry {
+
+    private final int maxAttempts;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final MeterRegistry meterRegistry;
+
+    public OptimisticRetry(
+            @Value("${marketplace.optimistic-retry.max-attempts:4}") int maxAttempts,
+            @Value("${marketplace.optimistic-retry.base-delay:PT0.005S}") Duration baseDelay,
+            @Value("${marketplace.optimistic-retry.max-delay:PT0.1S}") Duration maxDelay,
+            MeterRegistry meterRegistry) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("試行回数は1以上である必要があります。");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Rethrows the last conflict once every attempt has lost
+    public <T> T run(String operation, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            counter("marketplace.optimistic.attempts", operation).increment();
+            try {
+                return action.get();
+            } catch (OptimisticLockingFailureException e) {
+                counter("marketplace.optimistic.conflicts", operation).increment();
+                if (attempt == maxAttempts) {
+                    counter("marketplace.optimistic.exhausted", operation).increment();
+                    throw e;
+                }
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private void backOff(int attempt, OptimisticLockingFailureException conflict) {
+        long cap = Math.min(maxDelay.toNanos(), baseDelay.toNanos() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(cap + 1)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    private Counter counter(String name, String operation) {
+        // Registration is idempotent; the registry hands back the existing meter
+        return Counter.builder(name).tag("operation", operation).register(meterRegistry);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.marketplace.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+public final class NgramTokenizer {
+
+    private NgramTokenizer() {
+    }
+
+    // Every unigram and bigram of each letter/digit run, with its number of occurrences
+    public static Map<String, Integer> indexTerms(String text) {
+        Map<String, Integer> terms = new HashMap<>();
+        for (String run : runs(text)) {
+            for (int i = 0; i < run.length(); i++) {
+                terms.merge(run.substring(i, i + 1), 1, Integer::sum);
+                if (i + 1 < run.length()) {
+                    terms.merge(run.substring(i, i + 2), 1, Integer::sum);
+                }
+            }
+        }
+        return terms;
+    }
+
+    // Bigrams of each query run; a single-character run falls back to its unigram
+    public static Set<String> queryTerms(String query) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String run : runs(query)) {
+            if (run.length() == 1) {
+                terms.add(run);
+            }
+            for (int i = 0; i + 1 < run.length(); i++) {
+                terms.add(run.substring(i, i + 2));
+            }
+        }
+        return terms;
+    }
+
+    private static List<String> runs(String text) {
+        List<String> runs = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return runs;
+        }
+        // NFKC folds full-width/half-width variants, so ＰＣ and ﾉｰﾄ match PC and ノート
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                runs.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return runs;
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.marketplace.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class ProductSearchIndex {
+
+    static final int NAME_WEIGHT = 3;
+    static final int DESCRIPTION_WEIGHT = 1;
+
+    // term -> (product id -> weighted term frequency)
+    private final Map<String, Map<UUID, Integer>> postings = new ConcurrentHashMap<>();
+    // product id -> its indexed terms, used to unlink old postings on update or removal
+    private final Map<UUID, Map<String, Integer>> documents = new ConcurrentHashMap<>();
+
+    public void index(UUID productId, String name, String description) {
+        Map<String, Integer> terms = new HashMap<>();
+        NgramTokenizer.indexTerms(name).forEach((term, count) -> terms.merge(term, count * NAME_WEIGHT, Integer::sum));
+        NgramTokenizer.indexTerms(description).forEach((term, count) -> terms.merge(term, count * DESCRIPTION_WEIGHT, Integer::sum));
+
+        // compute() serializes concurrent updates of the same product
+        documents.compute(productId, (id, previous) -> {
+            if (previous != null) {
+                previous.keySet().stream().filter(term -> !terms.containsKey(term)).forEach(term -> unlink(term, id));
+            }
+            terms.forEach((term, weight) -> link(term, id, weight));
+            return terms;
+        });
+    }
+
+    public void remove(UUID productId) {
+        documents.computeIfPresent(productId, (id, previous) -> {
+            previous.keySet().forEach(term -> unlink(term, id));
+            return null;
+        });
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    // Ids of products containing every query term, best match first
+    public List<UUID> search(String query, int limit) {
+        Set<String> terms = NgramTokenizer.queryTerms(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        List<Map<UUID, Integer>> lists = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            Map<UUID, Integer> list = postings.get(term);
+            if (list == null) {
+                return List.of();
+            }
+            lists.add(list);
+        }
+        // Drive the intersection from the rarest term so the work is bounded by its posting list
+        lists.sort(Comparator.comparingInt(Map::size));
+
+        Comparator<ScoredId> ranking = Comparator.comparingInt(ScoredId::score).thenComparing(ScoredId::id);
+        PriorityQueue<ScoredId> top = new PriorityQueue<>(limit + 1, ranking);
+        candidates:
+        for (Map.Entry<UUID, Integer> candidate : lists.get(0).entrySet()) {
+            int score = candidate.getValue();
+            for (int i = 1; i < lists.size(); i++) {
+                Integer weight = lists.get(i).get(candidate.getKey());
+                if (weight == null) {
+                    continue candidates;
+                }
+                score += weight;
+            }
+            top.offer(new ScoredId(candidate.getKey(), score));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<UUID> ranked = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            ranked.add(0, top.poll().id());
+        }
+        return ranked;
+    }
+
+    private void link(String term, UUID productId, int weight) {
+        postings.compute(term, (t, list) -> {
+            Map<UUID, Integer> target = list != null ? list : new ConcurrentHashMap<>();
+            target.put(productId, weight);
+            return target;
+        });
+    }
+
+    private void unlink(String term, UUID productId) {
+        postings.computeIfPresent(term, (t, list) -> {
+            list.remove(productId);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private record ScoredId(UUID id, int score) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.marketplace.search;
+
+import java.util.UUID;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.example.marketplace.entity.Product;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+// Keeps the search index in step with product writes that go through JPA
+public class ProductSearchIndexListener {
+
+    // Resolved lazily so slices without the index (e.g. @DataJpaTest) can still create this listener
+    private final ObjectProvider<ProductSearchIndex> searchIndex;
+
+    public ProductSearchIndexListener(ObjectProvider<ProductSearchIndex> searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    void onSave(Product product) {
+        UUID id = product.getId();
+        String name = product.getName();
+        String description = product.getDescription();
+        afterCommit(() -> searchIndex.ifAvailable(index -> index.index(id, name, description)));
+    }
+
+    @PostRemove
+    void onRemove(Product product) {
+        UUID id = product.getId();
+        afterCommit(() -> searchIndex.ifAvailable(index -> index.remove(id)));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
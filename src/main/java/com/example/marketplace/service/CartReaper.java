@@ -0,0 +1,104 @@
+package com.example.marketplace.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.CartSessionRef;
+import com.example.marketplace.repository.CartItemRepository;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Deletes carts nobody has written to within the TTL. Each batch is its own short transaction, so the
+// reaper never holds locks on more than batchSize carts at a time.
+@Component
+public class CartReaper {
+
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final SessionCartCache sessionCartCache;
+    private final StockReservationLedger stockReservationLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration ttl;
+    private final int batchSize;
+    private final Counter reapedCarts;
+    private final Counter reapedItems;
+
+    public CartReaper(
+            CartRepository cartRepository,
+            CartItemRepository cartItemRepository,
+            SessionCartCache sessionCartCache,
+            StockReservationLedger stockReservationLedger,
+            TransactionTemplate transactionTemplate,
+            @Value("${marketplace.cart-reaper.ttl:P7D}") Duration ttl,
+            @Value("${marketplace.cart-reaper.batch-size:500}") int batchSize,
+            MeterRegistry meterRegistry) {
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.sessionCartCache = sessionCartCache;
+        this.stockReservationLedger = stockReservationLedger;
+        this.transactionTemplate = transactionTemplate;
+        this.ttl = ttl;
+        this.batchSize = batchSize;
+        this.reapedCarts = Counter.builder("marketplace.cart.reaper.carts")
+                .description("Idle carts deleted by the reaper")
+                .register(meterRegistry);
+        this.reapedItems = Counter.builder("marketplace.cart.reaper.items")
+                .description("Cart lines deleted along with idle carts")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${marketplace.cart-reaper.interval:PT10M}",
+            initialDelayString = "${marketplace.cart-reaper.interval:PT10M}")
+    public void reapIdleCarts() {
+        reapCartsIdleSince(LocalDateTime.now().minus(ttl));
+    }
+
+    // Returns the number of carts deleted
+    public int reapCartsIdleSince(LocalDateTime cutoff) {
+        int reaped = 0;
+        while (true) {
+            List<CartSessionRef> batch = cartRepository.findIdleCarts(cutoff, Limit.of(batchSize));
+            if (batch.isEmpty()) {
+                return reaped;
+            }
+            reaped += reapBatch(batch, cutoff);
+            if (batch.size() < batchSize) {
+                return reaped;
+            }
+        }
+    }
+
+    // The carts still idle are locked before anything is deleted, so both deletes cover exactly the same carts,
+    // and only those have their session mappings and holds dropped once the batch has committed
+    private int reapBatch(List<CartSessionRef> batch, LocalDateTime cutoff) {
+        List<UUID> selectedIds = batch.stream().map(CartSessionRef::getId).toList();
+        int[] deletedItems = new int[1];
+        List<CartSessionRef> reaped = transactionTemplate.execute(status -> {
+            List<CartSessionRef> idle = cartRepository.lockIdleCarts(selectedIds, cutoff);
+            if (!idle.isEmpty()) {
+                List<UUID> idleIds = idle.stream().map(CartSessionRef::getId).toList();
+                deletedItems[0] = cartItemRepository.deleteAllByCartIdIn(idleIds);
+                cartRepository.deleteAllByIdInBatch(idleIds);
+            }
+            return idle;
+        });
+        sessionCartCache.evictAll(reaped.stream().map(CartSessionRef::getSessionId).toList());
+        // Holds time out long before a cart goes idle; this only frees what is left of their bookkeeping
+        reaped.forEach(cart -> stockReservationLedger.releaseCart(cart.getId()));
+        reapedItems.increment(deletedItems[0]);
+        reapedCarts.increment(reaped.size());
+        return reaped.size();
+    }
+}
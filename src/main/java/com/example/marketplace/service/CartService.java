@@ -1,13 +1,24 @@
 package com.example.marketplace.service;
 
+import java.util.List;
 import java.util.UUID;
 
+import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CartSummary;
+import com.example.marketplace.dto.CartView;
 import com.example.marketplace.dto.CheckoutResult;
-import com.example.marketplace.entity.Cart;
 
 public interface CartService {
-	Cart addProductToCart(UUID cartId, UUID productId, int quantity);
-	Cart getCart(UUID cartid);
-	Cart getOrCreateCartBySession(String sessionId);
+	CartView addProductToCart(UUID cartId, UUID productId, int quantity);
+	CartView addProductsToCart(UUID cartId, List<AddToCartRequest> lines);
+	CartView getCart(UUID cartid);
+	CartView getOrCreateCartBySession(String sessionId);
+	UUID resolveCartIdBySession(String sessionId);
+	CartView addProductToCartBySession(String sessionId, UUID productId, int quantity);
+	CartView clearCartBySession(String sessionId);
+	CartSummary getCartSummary(UUID cartId);
+	CartSummary getCartSummaryBySession(String sessionId);
+	CartView clearCart(UUID cartId);
 	CheckoutResult checkout(UUID cartId);
+	CheckoutResult checkout(UUID cartId, String idempotencyKey);
 }
@@ -1,22 +1,45 @@
 package com.example.marketplace.service;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.example.marketplace.cache.CheckoutIdempotencyCache;
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CartLineView;
+import com.example.marketplace.dto.CartSummary;
+import com.example.marketplace.dto.CartView;
 import com.example.marketplace.dto.CheckoutResult;
 import com.example.marketplace.entity.Cart;
 import com.example.marketplace.entity.CartItem;
 import com.example.marketplace.entity.Product;
+import com.example.marketplace.entity.UuidV7Generator;
 import com.example.marketplace.exception.NotFoundException;
+import com.example.marketplace.inventory.HotSkuInventory;
+import com.example.marketplace.order.OrderJournal;
+import com.example.marketplace.order.PlacedOrder;
 import com.example.marketplace.repository.CartItemRepository;
 import com.example.marketplace.repository.CartRepository;
-import com.example.marketplace.repository.ProductRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+import com.example.marketplace.retry.OptimisticRetry;
 
 import lombok.RequiredArgsConstructor;
 
@@ -24,124 +47,402 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class CartServiceImpl implements CartService {
 
+    static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    
     private final CartRepository cartRepository;
-    private final ProductRepository productRepository;
     private final CartItemRepository cartItemRepository;
     private final ProductService productService;
+    private final SessionCartCache sessionCartCache;
+    private final CheckoutIdempotencyCache checkoutIdempotencyCache;
+    private final StockReservationLedger stockReservationLedger;
+    private final OptimisticRetry optimisticRetry;
+    private final TransactionTemplate transactionTemplate;
+    private final CheckoutCoalescer checkoutCoalescer;
+    private final OrderJournal orderJournal;
+    private final HotSkuInventory hotSkuInventory;
     
     @Override
-    public Cart addProductToCart(UUID cartId, UUID productId, int quantity) {
+    public CartView addProductToCart(UUID cartId, UUID productId, int quantity) {
         if (quantity <= 0) {
             throw new IllegalArgumentException("数量は0より大きい値である必要があります。");
         }
         
-        Cart cart = cartRepository.findById(cartId)
-            .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
+        // Hold the stock before writing the line, so carts cannot collectively claim more than there is
+        Product product = productService.findById(productId);
+        int allotted = allotted(productId);
+        int stock = product.getStock() + allotted;
+        if (!stockReservationLedger.hold(productId, cartId, quantity, stock)) {
+            throw new IllegalArgumentException("在庫不足です。在庫: " +
+                Math.max(stockReservationLedger.available(productId, stock), 0) + ", ご要望: " + quantity);
+        }
         
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new NotFoundException(productId + " の商品が見つかりません。"));
+        boolean written;
+        try {
+            written = upsertCartItem(cartId, productId, quantity, allotted);
+        } catch (RuntimeException e) {
+            stockReservationLedger.unhold(productId, cartId, quantity);
+            throw e;
+        }
+        if (!written) {
+            stockReservationLedger.unhold(productId, cartId, quantity);
+            // The line already in the cart (its hold may have timed out) plus this quantity exceeds physical stock
+            CartView cart = getCart(cartId);
+            int currentCartItemQuantity = cart.getItems().stream()
+                .filter(item -> item.getProductId().equals(productId))
+                .mapToInt(CartLineView::getQuantity)
+                .sum();
+            throw new IllegalArgumentException("在庫不足です。在庫: " + 
+                (stock - currentCartItemQuantity) + ", ご要望: " + quantity);
+        }
         
-        Optional<CartItem> existingCartItem = cartItemRepository.findByCartAndProduct(cart, product);
-
-        // Check if there's enough stock
-        int currentCartItemQuantity = existingCartItem.map(CartItem::getQuantity).orElse(0);
+        return getCart(cartId);
+    }
+    
+    // A hot product's row is short by the units held in memory for it, which are still for sale
+    private int allotted(UUID productId) {
+        return Math.toIntExact(hotSkuInventory.allotted(productId));
+    }
+    
+    private int availableStock(Product product) {
+        return product.getStock() + allotted(product.getId());
+    }
+    
+    private boolean upsertCartItem(UUID cartId, UUID productId, int quantity, int allotted) {
+        try {
+            return writeCartItem(cartId, productId, quantity, allotted);
+        } catch (DataIntegrityViolationException e) {
+            // Either the cart does not exist (foreign key) or a parallel add inserted the same line first (unique key)
+            if (!cartRepository.existsById(cartId)) {
+                throw new NotFoundException(cartId + " のカートが見つかりません。");
+            }
+            return writeCartItem(cartId, productId, quantity, allotted);
+        }
+    }
+    
+    // The upsert is one statement and needs no retry; it only has to commit together with the version bump
+    private boolean writeCartItem(UUID cartId, UUID productId, int quantity, int allotted) {
+        return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            if (cartItemRepository.upsertQuantity(UuidV7Generator.next(), cartId, productId, quantity, allotted) != 1) {
+                return false;
+            }
+            cartRepository.touch(cartId, LocalDateTime.now());
+            return true;
+        }));
+    }
+    
+    @Override
+    public CartView addProductsToCart(UUID cartId, List<AddToCartRequest> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new IllegalArgumentException("追加する商品を1件以上指定してください。");
+        }
         
-        if (currentCartItemQuantity + quantity > product.getStock()) {
-            throw new IllegalArgumentException("在庫不足です。在庫: " + 
-                (product.getStock() - currentCartItemQuantity) + ", ご要望: " + quantity);
+        // A product listed on several lines is added once with the summed quantity
+        Map<UUID, Integer> quantities = new LinkedHashMap<>();
+        for (AddToCartRequest line : lines) {
+            if (line.getProductId() == null) {
+                throw new IllegalArgumentException("商品IDはNULLにできません。");
+            }
+            if (line.getQuantity() <= 0) {
+                throw new IllegalArgumentException("数量は0より大きい値である必要があります。");
+            }
+            quantities.merge(line.getProductId(), line.getQuantity(), Integer::sum);
         }
-
-        if (existingCartItem.isPresent()) {
-            // Update existing item quantity
-            CartItem item = existingCartItem.get();
-            item.setQuantity(item.getQuantity() + quantity);
-            cartItemRepository.save(item);
-            
-            existingCartItem = Optional.of(item);
-        } else {
-            // Create new cart item
-            CartItem newItem = new CartItem();
-            newItem.setCart(cart);
-            newItem.setProduct(product);
-            newItem.setQuantity(quantity);
-            cartItemRepository.save(newItem);
-            
-            existingCartItem = Optional.of(newItem);
+        
+        return optimisticRetry.run("add-to-cart",
+            () -> transactionTemplate.execute(status -> addLines(cartId, quantities)));
+    }
+    
+    private CartView addLines(UUID cartId, Map<UUID, Integer> quantities) {
+        Cart cart = findCartWithItems(cartId);
+        Map<UUID, Product> products = new HashMap<>();
+        productService.findAllById(quantities.keySet()).forEach(product -> products.put(product.getId(), product));
+        Map<UUID, CartItem> itemsByProduct = new HashMap<>();
+        cart.getItems().forEach(item -> itemsByProduct.put(item.getProduct().getId(), item));
+        
+        // Every line is checked before any is written, so a rejected batch leaves the cart untouched
+        for (Map.Entry<UUID, Integer> entry : quantities.entrySet()) {
+            Product product = products.get(entry.getKey());
+            if (product == null) {
+                throw new NotFoundException(entry.getKey() + " の商品が見つかりません。");
+            }
+            CartItem existingItem = itemsByProduct.get(entry.getKey());
+            int currentCartItemQuantity = existingItem == null ? 0 : existingItem.getQuantity();
+            int stock = availableStock(product);
+            if (currentCartItemQuantity + entry.getValue() > stock) {
+                throw new IllegalArgumentException("在庫不足です。在庫: " + 
+                    (stock - currentCartItemQuantity) + ", ご要望: " + entry.getValue());
+            }
         }
         
-        Set<CartItem> existingItems = cart.getItems();
-        existingItems.add(existingCartItem.get());
-        cart.setItems(existingItems);
+        holdAll(cartId, quantities, products);
+        // Also covers a commit that fails its version check, which happens after this method has returned
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    quantities.forEach((productId, quantity) -> stockReservationLedger.unhold(productId, cartId, quantity));
+                }
+            }
+        });
         
-        return cart;
+        List<CartItem> newItems = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> {
+            CartItem existingItem = itemsByProduct.get(productId);
+            if (existingItem != null) {
+                existingItem.setQuantity(existingItem.getQuantity() + quantity);
+            } else {
+                newItems.add(new CartItem(null, products.get(productId), quantity, cart));
+            }
+        });
+        try {
+            cartItemRepository.saveAll(newItems);
+            cartItemRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            // A single add upserted one of these lines after the cart was read; the next attempt sees that line
+            // and bumps it instead of inserting a second one (a vanished cart surfaces there as not found)
+            throw new ObjectOptimisticLockingFailureException(CartItem.class, cartId, e);
+        }
+        // If anything changed the cart since it was read, this batch fails and is retried on fresh state
+        // instead of overwriting the other writer's quantities
+        if (cartRepository.touchAtVersion(cartId, cart.getVersion(), LocalDateTime.now()) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
+        }
+        // The line query flushes the quantity changes and new lines first, so the view reflects this batch
+        return getCart(cartId);
+    }
+    
+    // All lines or none: a line that cannot be held gives back the holds already taken for this batch
+    private void holdAll(UUID cartId, Map<UUID, Integer> quantities, Map<UUID, Product> products) {
+        Map<UUID, Integer> held = new HashMap<>();
+        for (Map.Entry<UUID, Integer> entry : quantities.entrySet()) {
+            int stock = availableStock(products.get(entry.getKey()));
+            if (!stockReservationLedger.hold(entry.getKey(), cartId, entry.getValue(), stock)) {
+                held.forEach((productId, quantity) -> stockReservationLedger.unhold(productId, cartId, quantity));
+                throw new IllegalArgumentException("在庫不足です。在庫: " +
+                    Math.max(stockReservationLedger.available(entry.getKey(), stock), 0) + ", ご要望: " + entry.getValue());
+            }
+            held.put(entry.getKey(), entry.getValue());
+        }
+    }
+    
+    private Cart findCartWithItems(UUID cartId) {
+        return cartRepository.findWithItemsAndProductsById(cartId)
+            .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
     }
 
     @Override
-    public Cart getOrCreateCartBySession(String sessionId) {
-        return cartRepository.findBySessionId(sessionId)
-        	    .stream()
-        	    .findFirst()
-        	    .orElseGet(() -> createNewCart(sessionId));
+    public CartView getOrCreateCartBySession(String sessionId) {
+        return readSessionCart(sessionId, this::findCartView);
     }
     
-    private Cart createNewCart(String sessionId) {
-        Cart newCart = new Cart();
-        newCart.setSessionId(sessionId);
-        return cartRepository.save(newCart);
+    @Override
+    public UUID resolveCartIdBySession(String sessionId) {
+        Optional<UUID> cached = sessionCartCache.get(sessionId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        
+        UUID cartId = cartRepository.findIdBySessionId(sessionId)
+            .orElseGet(() -> createNewCart(sessionId));
+        sessionCartCache.put(sessionId, cartId);
+        return cartId;
+    }
+    
+    private UUID createNewCart(String sessionId) {
+        UUID cartId = UuidV7Generator.next();
+        try {
+            cartRepository.insertCart(cartId, sessionId, LocalDateTime.now());
+            return cartId;
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent first request from the same session created the cart; use that one
+            return cartRepository.findIdBySessionId(sessionId)
+                .orElseThrow(() -> new IllegalStateException(sessionId + " のカートを作成できませんでした。"));
+        }
+    }
+    
+    private <T> T readSessionCart(String sessionId, Function<UUID, Optional<T>> reader) {
+        Optional<T> result = reader.apply(resolveCartIdBySession(sessionId));
+        if (result.isPresent()) {
+            return result.get();
+        }
+        // The cached cart is gone (checked out); resolve the session again, which finds or creates its current cart
+        sessionCartCache.evict(sessionId);
+        UUID cartId = resolveCartIdBySession(sessionId);
+        return reader.apply(cartId)
+            .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
+    }
+    
+    // The same fallback for writes, which report a missing cart by throwing. A NotFoundException that still names
+    // the session's current cart (e.g. an unknown product) is not about a stale id and is passed on
+    private <T> T writeSessionCart(String sessionId, Function<UUID, T> writer) {
+        UUID cachedCartId = resolveCartIdBySession(sessionId);
+        try {
+            return writer.apply(cachedCartId);
+        } catch (NotFoundException e) {
+            sessionCartCache.evict(sessionId);
+            UUID cartId = resolveCartIdBySession(sessionId);
+            if (cartId.equals(cachedCartId)) {
+                throw e;
+            }
+            return writer.apply(cartId);
+        }
+    }
+    
+    @Override
+    public CartView addProductToCartBySession(String sessionId, UUID productId, int quantity) {
+        return writeSessionCart(sessionId, cartId -> addProductToCart(cartId, productId, quantity));
+    }
+    
+    @Override
+    public CartView clearCartBySession(String sessionId) {
+        // Each attempt in its own transaction, as the proxied clearCart would run
+        return writeSessionCart(sessionId, cartId -> transactionTemplate.execute(status -> clearCart(cartId)));
     }
 
     @Override
-    public Cart getCart(UUID cartId) {
+    public CartView getCart(UUID cartId) {
         if (cartId == null) {
             throw new IllegalArgumentException("カートIDはNULLにできません。");
         }
-        return cartRepository.findById(cartId)
+        return findCartView(cartId)
+            .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
+    }
+    
+    private Optional<CartView> findCartView(UUID cartId) {
+        List<CartLineView> lines = cartItemRepository.findLineViewsByCartId(cartId);
+        // No lines can mean an empty cart or no cart at all; only that case needs the extra existence check
+        if (lines.isEmpty() && !cartRepository.existsById(cartId)) {
+            return Optional.empty();
+        }
+        return Optional.of(CartView.of(cartId, lines));
+    }
+    
+    @Override
+    public CartSummary getCartSummary(UUID cartId) {
+        return cartRepository.findSummaryById(cartId)
             .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
     }
     
+    @Override
+    public CartSummary getCartSummaryBySession(String sessionId) {
+        return readSessionCart(sessionId, cartRepository::findSummaryById);
+    }
+    
     @Override
     @Transactional
+    public CartView clearCart(UUID cartId) {
+        if (cartItemRepository.deleteAllByCartId(cartId) == 0 && !cartRepository.existsById(cartId)) {
+            throw new NotFoundException(cartId + " のカートが見つかりません。");
+        }
+        cartRepository.touch(cartId, LocalDateTime.now());
+        stockReservationLedger.releaseCart(cartId);
+        return CartView.of(cartId, List.of());
+    }
+    
+    @Override
+    public CheckoutResult checkout(UUID cartId, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return checkout(cartId);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new IllegalArgumentException("Idempotency-Key は1文字以上" + MAX_IDEMPOTENCY_KEY_LENGTH + "文字以下で指定してください。");
+        }
+        // A resent checkout is answered from the first one and never reaches the stock again
+        return checkoutIdempotencyCache.checkout(cartId, idempotencyKey, () -> checkout(cartId));
+    }
+    
+    @Override
     public CheckoutResult checkout(UUID cartId) {
+        if (checkoutCoalescer.isEnabled()) {
+            Optional<CheckoutResult> batched = checkoutCoalescer.checkout(cartId);
+            if (batched.isPresent()) {
+                return batched.get();
+            }
+            // The batch it joined was rolled back as a whole; check out alone to get this cart's own outcome
+        }
         try {
-            Cart cart = cartRepository.findById(cartId)
-                .orElseThrow(() -> new NotFoundException(cartId + " のカートが見つかりません。"));
+            return optimisticRetry.run("checkout",
+                () -> transactionTemplate.execute(status -> checkoutOnce(cartId, status)));
+        } catch (OptimisticLockingFailureException e) {
+            return CheckoutResult.failure("カートが同時に更新されたため、精算できませんでした。もう一度お試しください。");
+        }
+    }
+    
+    private CheckoutResult checkoutOnce(UUID cartId, TransactionStatus status) {
+        try {
+            Cart cart = findCartWithItems(cartId);
             
             if (cart.getItems().isEmpty()) {
                 return CheckoutResult.failure("空のカートは精算できません。");
             }
             
-            List<String> errors = new ArrayList<>();
-            
-            // First, validate all items have sufficient stock
+            // Captured before anything changes: the lines and prices as they are being paid for
+            PlacedOrder order = PlacedOrder.of(UuidV7Generator.next(), cart, LocalDateTime.now());
+            Map<UUID, Integer> quantities = new HashMap<>();
+            Map<UUID, Product> products = new HashMap<>();
             for (CartItem item : cart.getItems()) {
                 Product product = item.getProduct();
-                if (product.getStock() < item.getQuantity()) {
-                    errors.add(String.format("%s の在庫が不足しています。在庫数: %d, 必要数: %d", 
-                        product.getName(), product.getStock(), item.getQuantity()));
-                }
+                quantities.merge(product.getId(), item.getQuantity(), Integer::sum);
+                products.put(product.getId(), product);
             }
             
-            // If any stock validation failed, return error
-            if (!errors.isEmpty()) {
-                return CheckoutResult.failure("在庫不足のため、精算に失敗しました。", errors);
+            // Reserve every line in one batched, id-ordered step
+            Set<UUID> shortProductIds = productService.reserveStock(quantities);
+            if (!shortProductIds.isEmpty()) {
+                status.setRollbackOnly();
+                return shortage(shortProductIds, products, quantities, hotSkuInventory);
             }
             
-            // Reduce stock for all items
-            for (CartItem item : cart.getItems()) {
-                productService.reduceStock(item.getProduct().getId(), item.getQuantity());
+            // Delete the cart after successful stock reduction: two bulk statements, however many lines it has.
+            // A line written since the cart was read has bumped its version; the whole checkout then rolls back
+            // and is retried, rather than deleting a line nobody paid for
+            cartItemRepository.deleteAllByCartId(cartId);
+            if (cartRepository.deleteCartByIdAndVersion(cartId, cart.getVersion()) == 0) {
+                throw new ObjectOptimisticLockingFailureException(Cart.class, cartId);
             }
+            // Once this commits the cart is gone and the stock is decremented for real, so the session has to
+            // resolve a new cart and the cart's holds are no longer needed. Until then both stay as they are, and
+            // a rolled back checkout leaves them in place
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    sessionCartCache.evict(cart.getSessionId());
+                    stockReservationLedger.releaseCart(cartId);
+                }
+            });
+            orderJournal.appendOnCommit(order);
             
-            // Delete the cart after successful stock reduction
-            cartRepository.delete(cart);
-            
-            return CheckoutResult.success("精算が完了しました！ご注文が確定されました。");
+            return CheckoutResult.success("精算が完了しました！ご注文が確定されました。", order.total(), order.id());
             
+        } catch (OptimisticLockingFailureException e) {
+            // Left to the retry around this attempt; throwing rolls the attempt back
+            throw e;
         } catch (NotFoundException e) {
+            // Undo the decrements already applied by this checkout while still returning a result to the caller
+            status.setRollbackOnly();
             return CheckoutResult.failure(e.getMessage());
         } catch (IllegalArgumentException e) {
+            status.setRollbackOnly();
             return CheckoutResult.failure("精算に失敗しました: " + e.getMessage());
+        } catch (ArithmeticException e) {
+            // PlacedOrder could not add the cart up
+            status.setRollbackOnly();
+            return CheckoutResult.failure("合計金額が上限を超えるため、精算できません。");
         } catch (Exception e) {
+            status.setRollbackOnly();
             return CheckoutResult.failure("精算中に予期せぬエラーが発生しました。");
         }
     }
+    
+    // Also used by CheckoutCoalescer, so a cart that runs short in a batch reads exactly like one checked out alone
+    static CheckoutResult shortage(Set<UUID> shortProductIds, Map<UUID, Product> products,
+            Map<UUID, Integer> quantities, HotSkuInventory hotSkuInventory) {
+        List<String> errors = new ArrayList<>();
+        for (UUID productId : shortProductIds) {
+            Product product = products.get(productId);
+            errors.add(String.format("%s の在庫が不足しています。在庫数: %d, 必要数: %d", 
+                product.getName(), product.getStock() + hotSkuInventory.allotted(productId), quantities.get(productId)));
+        }
+        return CheckoutResult.failure("在庫不足のため、精算に失敗しました。", errors);
+    }
 }
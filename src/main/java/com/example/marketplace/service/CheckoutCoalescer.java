@@ -0,0 +1,293 @@
+package com.example.marketplace.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.CartItem;
+import com.example.marketplace.entity.Product;
+import com.example.marketplace.entity.UuidV7Generator;
+import com.example.marketplace.inventory.HotSkuInventory;
+import com.example.marketplace.order.OrderJournal;
+import com.example.marketplace.order.PlacedOrder;
+import com.example.marketplace.repository.CartItemRepository;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+// Group commit for checkouts. Checkouts that arrive within `window` of each other, up to `max-batch-size`, are
+// applied by one flusher thread in a single transaction: one decrement per product for the summed quantities,
+// one delete for all their lines, one commit. When a product runs short, the stock is handed out cart by cart
+// in arrival order within the same transaction, and only the carts it cannot cover fail, with a lone checkout's
+// message. When a cart changed since it was read, the batch is rolled back and its callers check out one by one
+// as usual. Off unless enabled.
+@Slf4j
+@Component
+public class CheckoutCoalescer {
+
+    private final CartRepository cartRepository;
+    private final CartItemRepository cartItemRepository;
+    private final ProductService productService;
+    private final SessionCartCache sessionCartCache;
+    private final StockReservationLedger stockReservationLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderJournal orderJournal;
+    private final HotSkuInventory hotSkuInventory;
+    private final boolean enabled;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingCheckout> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSizes;
+    private final Counter fallbacks;
+    private final Thread flusher;
+    private volatile boolean stopped;
+
+    public CheckoutCoalescer(
+            CartRepository cartRepository,
+            CartItemRepository cartItemRepository,
+            ProductService productService,
+            SessionCartCache sessionCartCache,
+            StockReservationLedger stockReservationLedger,
+            TransactionTemplate transactionTemplate,
+            OrderJournal orderJournal,
+            HotSkuInventory hotSkuInventory,
+            @Value("${marketplace.checkout-coalescer.enabled:false}") boolean enabled,
+            @Value("${marketplace.checkout-coalescer.window:PT0.002S}") Duration window,
+            @Value("${marketplace.checkout-coalescer.max-batch-size:64}") int maxBatchSize,
+            MeterRegistry meterRegistry) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("max-batch-size must be positive");
+        }
+        this.cartRepository = cartRepository;
+        this.cartItemRepository = cartItemRepository;
+        this.productService = productService;
+        this.sessionCartCache = sessionCartCache;
+        this.stockReservationLedger = stockReservationLedger;
+        this.transactionTemplate = transactionTemplate;
+        this.orderJournal = orderJournal;
+        this.hotSkuInventory = hotSkuInventory;
+        this.enabled = enabled;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.batchSizes = DistributionSummary.builder("marketplace.checkout-coalescer.batch-size")
+                .description("Checkouts committed together per batch")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("marketplace.checkout-coalescer.fallbacks")
+                .description("Batches rolled back and handed back to their callers to check out one by one")
+                .register(meterRegistry);
+        this.flusher = enabled ? Thread.ofPlatform().name("checkout-coalescer").daemon().start(this::flushLoop) : null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Waits for the batch this checkout joins. Empty means the batch was abandoned and nothing was changed;
+    // the caller should then check out on its own
+    public Optional<CheckoutResult> checkout(UUID cartId) {
+        PendingCheckout pending = new PendingCheckout(cartId, new CompletableFuture<>());
+        queue.add(pending);
+        if (flusher == null || stopped) {
+            // Nobody may be left to flush it
+            abandon(List.of(pending));
+        }
+        return pending.result().join();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher != null) {
+            // Set before the interrupt, so a checkout queued after the flusher's last drain sees it
+            stopped = true;
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private void flushLoop() {
+        try {
+            while (true) {
+                List<PendingCheckout> batch = new ArrayList<>();
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    PendingCheckout next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            }
+        } catch (InterruptedException e) {
+            List<PendingCheckout> left = new ArrayList<>();
+            queue.drainTo(left);
+            abandon(left);
+        }
+    }
+
+    private void flush(List<PendingCheckout> batch) {
+        // A cart sent twice (a double click without an Idempotency-Key) is checked out once here; the repeat
+        // runs alone after this batch commits and finds the cart gone, as it would have done in sequence
+        Map<UUID, PendingCheckout> byCart = new LinkedHashMap<>();
+        List<PendingCheckout> repeats = new ArrayList<>();
+        for (PendingCheckout pending : batch) {
+            if (byCart.putIfAbsent(pending.cartId(), pending) != null) {
+                repeats.add(pending);
+            }
+        }
+
+        BatchOutcome outcome = commit(byCart.keySet());
+        if (outcome == null) {
+            fallbacks.increment();
+            abandon(batch);
+            return;
+        }
+
+        batchSizes.record(outcome.checkedOut().size());
+        // Only now that the commit has happened may the carts' holds and session mappings go
+        outcome.checkedOut().forEach(cart -> {
+            sessionCartCache.evict(cart.getSessionId());
+            stockReservationLedger.releaseCart(cart.getId());
+        });
+        byCart.values().forEach(pending -> pending.result().complete(Optional.of(outcome.results().get(pending.cartId()))));
+        abandon(repeats);
+    }
+
+    // A failure up to and including the commit leaves the batch rolled back; its carts are then retried one by
+    // one. A failure after it (another afterCommit callback) changes nothing: the carts are paid for and gone,
+    // so their callers still get the batch's results
+    private BatchOutcome commit(Collection<UUID> cartIds) {
+        AtomicBoolean committed = new AtomicBoolean();
+        AtomicReference<BatchOutcome> outcome = new AtomicReference<>();
+        try {
+            return transactionTemplate.execute(status -> {
+                // Registered first, so it runs before any callback that might throw
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        committed.set(true);
+                    }
+                });
+                outcome.set(checkoutTogether(cartIds, status));
+                return outcome.get();
+            });
+        } catch (RuntimeException e) {
+            if (committed.get()) {
+                log.warn("Checkout batch committed but a post-commit step failed", e);
+                return outcome.get();
+            }
+            return null;
+        }
+    }
+
+    // Null when the batch has to be rolled back and retried cart by cart
+    private BatchOutcome checkoutTogether(Collection<UUID> ids, TransactionStatus status) {
+        Map<UUID, Cart> carts = new HashMap<>();
+        cartRepository.findAllWithItemsAndProductsByIdIn(ids).forEach(cart -> carts.put(cart.getId(), cart));
+
+        Map<UUID, CheckoutResult> results = new HashMap<>();
+        List<Cart> checkedOut = new ArrayList<>();
+        Map<UUID, Integer> quantities = new HashMap<>();
+        Map<UUID, PlacedOrder> orders = new HashMap<>();
+        for (UUID cartId : ids) {
+            Cart cart = carts.get(cartId);
+            if (cart == null) {
+                results.put(cartId, CheckoutResult.failure(cartId + " のカートが見つかりません。"));
+            } else if (cart.getItems().isEmpty()) {
+                results.put(cartId, CheckoutResult.failure("空のカートは精算できません。"));
+            } else {
+                PlacedOrder order = PlacedOrder.of(UuidV7Generator.next(), cart, LocalDateTime.now());
+                quantitiesOf(cart).forEach((productId, quantity) -> quantities.merge(productId, quantity, Integer::sum));
+                orders.put(cartId, order);
+                results.put(cartId, CheckoutResult.success("精算が完了しました！ご注文が確定されました。", order.total(), order.id()));
+                checkedOut.add(cart);
+            }
+        }
+        if (checkedOut.isEmpty()) {
+            return new BatchOutcome(results, checkedOut);
+        }
+
+        // Each hot row is updated once for the whole batch instead of once per checkout. When that runs short
+        // it has changed nothing, and the carts are served one at a time in the order they arrived
+        if (!productService.tryReserveStock(quantities).isEmpty()) {
+            for (Cart cart : List.copyOf(checkedOut)) {
+                Map<UUID, Integer> cartQuantities = quantitiesOf(cart);
+                Set<UUID> shortProductIds = productService.tryReserveStock(cartQuantities);
+                if (!shortProductIds.isEmpty()) {
+                    checkedOut.remove(cart);
+                    orders.remove(cart.getId());
+                    results.put(cart.getId(), CartServiceImpl.shortage(shortProductIds, productsOf(cart),
+                            cartQuantities, hotSkuInventory));
+                }
+            }
+            if (checkedOut.isEmpty()) {
+                return new BatchOutcome(results, checkedOut);
+            }
+        }
+        cartItemRepository.deleteAllByCartIdIn(checkedOut.stream().map(Cart::getId).toList());
+        for (Cart cart : checkedOut) {
+            if (cartRepository.deleteCartByIdAndVersion(cart.getId(), cart.getVersion()) == 0) {
+                status.setRollbackOnly();
+                return null;
+            }
+        }
+        checkedOut.forEach(cart -> orderJournal.appendOnCommit(orders.get(cart.getId())));
+        return new BatchOutcome(results, checkedOut);
+    }
+
+    private static Map<UUID, Integer> quantitiesOf(Cart cart) {
+        Map<UUID, Integer> quantities = new HashMap<>();
+        for (CartItem item : cart.getItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private static Map<UUID, Product> productsOf(Cart cart) {
+        Map<UUID, Product> products = new HashMap<>();
+        for (CartItem item : cart.getItems()) {
+            products.put(item.getProduct().getId(), item.getProduct());
+        }
+        return products;
+    }
+
+    private static void abandon(List<PendingCheckout> pendings) {
+        pendings.forEach(pending -> pending.result().complete(Optional.empty()));
+    }
+
+    private record PendingCheckout(UUID cartId, CompletableFuture<Optional<CheckoutResult>> result) {
+    }
+
+    private record BatchOutcome(Map<UUID, CheckoutResult> results, List<Cart> checkedOut) {
+    }
+}
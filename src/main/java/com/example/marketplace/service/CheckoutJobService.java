@@ -0,0 +1,187 @@
+package com.example.marketplace.service;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.example.marketplace.dto.CheckoutJobView;
+import com.example.marketplace.dto.CheckoutJobView.Status;
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.exception.CheckoutQueueFullException;
+import com.example.marketplace.exception.NotFoundException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+// Runs checkouts off the servlet threads. Every accepted job gets its own virtual thread, but only `concurrency`
+// of them check out at a time, since each holds a connection and a transaction; the rest wait their turn in
+// arrival order. Once `queue-capacity` jobs are waiting or running, new ones are refused instead of piling up.
+// Finished jobs are kept for `job-ttl`, but at most `max-results` of them; beyond that the cache evicts finished
+// ones, never a job that is still waiting or running.
+@Service
+public class CheckoutJobService {
+
+    // Kept below the servlet container's default async timeout of 30 seconds
+    static final int MAX_WAIT_SECONDS = 20;
+
+    private final CartService cartService;
+    private final ExecutorService executor;
+    private final Semaphore slots;
+    private final Semaphore running;
+    private final Cache<UUID, CheckoutJob> jobs;
+    private final Counter rejected;
+
+    public CheckoutJobService(
+            CartService cartService,
+            @Value("${marketplace.async-checkout.queue-capacity:1000}") int queueCapacity,
+            @Value("${marketplace.async-checkout.concurrency:8}") int concurrency,
+            @Value("${marketplace.async-checkout.job-ttl:PT15M}") Duration jobTtl,
+            @Value("${marketplace.async-checkout.max-results:10000}") long maxResults,
+            MeterRegistry meterRegistry) {
+        if (concurrency < 1 || queueCapacity < concurrency) {
+            throw new IllegalArgumentException("queue-capacity must be at least concurrency, which must be positive");
+        }
+        if (maxResults < 1) {
+            throw new IllegalArgumentException("max-results must be positive");
+        }
+        this.cartService = cartService;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("checkout-", 0).factory());
+        this.slots = new Semaphore(queueCapacity);
+        this.running = new Semaphore(concurrency, true);
+        // Written again when the job finishes, so a result stays readable for the TTL after it is ready. Unfinished
+        // jobs weigh nothing: they are already bounded by queue-capacity, and evicting one would lose its result
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(jobTtl)
+                .maximumWeight(maxResults)
+                .<UUID, CheckoutJob>weigher((id, job) -> job.done.isDone() ? 1 : 0)
+                .build();
+        this.rejected = Counter.builder("marketplace.async-checkout.rejected")
+                .description("Checkout jobs refused because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("marketplace.async-checkout.in-flight", slots, s -> queueCapacity - s.availablePermits())
+                .description("Checkout jobs waiting or running")
+                .register(meterRegistry);
+    }
+
+    public CheckoutJobView submit(UUID cartId, String idempotencyKey) {
+        if (!slots.tryAcquire()) {
+            rejected.increment();
+            throw new CheckoutQueueFullException("精算の受付が混み合っています。しばらくしてからもう一度お試しください。");
+        }
+        // Random rather than time-ordered: the id is all a client needs to read the result
+        CheckoutJob job = new CheckoutJob(UUID.randomUUID(), cartId);
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, idempotencyKey));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            jobs.invalidate(job.id);
+            slots.release();
+            throw new CheckoutQueueFullException("精算を受け付けられませんでした。しばらくしてからもう一度お試しください。");
+        }
+        return job.view();
+    }
+
+    public CheckoutJobView getJob(UUID cartId, UUID jobId) {
+        return find(cartId, jobId).view();
+    }
+
+    // Long poll: completes when the job finishes or once waitSeconds have passed, whichever comes first,
+    // without holding a thread while it waits
+    public CompletableFuture<CheckoutJobView> awaitJob(UUID cartId, UUID jobId, int waitSeconds) {
+        if (waitSeconds < 0 || waitSeconds > MAX_WAIT_SECONDS) {
+            throw new IllegalArgumentException("待機秒数は0以上" + MAX_WAIT_SECONDS + "以下である必要があります。");
+        }
+        CheckoutJob job = find(cartId, jobId);
+        if (waitSeconds == 0 || job.done.isDone()) {
+            return CompletableFuture.completedFuture(job.view());
+        }
+        // Timed out on a copy, so the job's own future is only ever completed with its result
+        return job.done.copy()
+                .completeOnTimeout(null, waitSeconds, TimeUnit.SECONDS)
+                .thenApply(ignored -> job.view());
+    }
+
+    // Lets running checkouts commit; jobs still waiting for a turn are dropped with the executor
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    private CheckoutJob find(UUID cartId, UUID jobId) {
+        CheckoutJob job = jobs.getIfPresent(jobId);
+        if (job == null || !job.cartId.equals(cartId)) {
+            throw new NotFoundException("精算ジョブが見つかりません。");
+        }
+        return job;
+    }
+
+    private void run(CheckoutJob job, String idempotencyKey) {
+        CheckoutResult result;
+        try {
+            running.acquire();
+            try {
+                job.running = true;
+                result = checkout(job.cartId, idempotencyKey);
+            } finally {
+                running.release();
+            }
+        } catch (InterruptedException e) {
+            result = CheckoutResult.failure("精算が中断されました。もう一度お試しください。");
+            Thread.currentThread().interrupt();
+        } finally {
+            slots.release();
+        }
+        // Published last, so a client that sees the job finished finds its slot already free. Rewritten after
+        // completing, so the entry is weighed as finished
+        job.done.complete(result);
+        jobs.put(job.id, job);
+    }
+
+    // The synchronous endpoint reports these through GlobalExceptionHandler; here they become the job's result
+    private CheckoutResult checkout(UUID cartId, String idempotencyKey) {
+        try {
+            return cartService.checkout(cartId, idempotencyKey);
+        } catch (IllegalArgumentException | NotFoundException e) {
+            return CheckoutResult.failure(e.getMessage());
+        } catch (RuntimeException e) {
+            return CheckoutResult.failure("予期せぬエラーが発生しました。");
+        }
+    }
+
+    private static final class CheckoutJob {
+        private final UUID id;
+        private final UUID cartId;
+        private final CompletableFuture<CheckoutResult> done = new CompletableFuture<>();
+        private volatile boolean running;
+
+        private CheckoutJob(UUID id, UUID cartId) {
+            this.id = id;
+            this.cartId = cartId;
+        }
+
+        // Finished-ness comes from the future itself, so long polls woken by its completion already see the result
+        private CheckoutJobView view() {
+            CheckoutResult result = done.getNow(null);
+            Status status = result != null
+                    ? (result.isSuccess() ? Status.SUCCEEDED : Status.FAILED)
+                    : (running ? Status.RUNNING : Status.QUEUED);
+            return new CheckoutJobView(id, cartId, status, result);
+        }
+    }
+}
@@ -1,12 +1,26 @@
 package com.example.marketplace.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import com.example.marketplace.dto.ProductLookup;
+import com.example.marketplace.dto.ProductPage;
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.entity.Product;
 
 public interface ProductService {
-	List<Product> getAllProducts();
+	ProductPage getProducts(UUID after, int limit);
+	void forEachProduct(Consumer<ProductView> action);
+	ProductView getProduct(UUID id);
 	Product findById(UUID id);
+	List<Product> findAllById(Collection<UUID> ids);
+	ProductLookup lookupProducts(List<UUID> ids);
+	List<ProductView> searchProducts(String query, int limit);
 	void reduceStock(UUID productId, int quantity);
+	Set<UUID> reserveStock(Map<UUID, Integer> quantities);
+	Set<UUID> tryReserveStock(Map<UUID, Integer> quantities);
 }
@@ -1,13 +1,38 @@
 package com.example.marketplace.service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import com.example.marketplace.cache.ProductCache;
+import com.example.marketplace.dto.ProductLookup;
+import com.example.marketplace.dto.ProductPage;
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.entity.Product;
 import com.example.marketplace.exception.NotFoundException;
+import com.example.marketplace.inventory.HotSkuInventory;
 import com.example.marketplace.repository.ProductRepository;
+import com.example.marketplace.search.ProductSearchIndex;
 
 import lombok.RequiredArgsConstructor;
 
@@ -15,51 +40,235 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
 	
+	static final int MAX_PAGE_SIZE = 500;
+	static final int STREAM_BATCH_SIZE = 500;
+	static final int MAX_SEARCH_RESULTS = 100;
+	static final int MAX_LOOKUP_IDS = 200;
+	
 	private final ProductRepository productRepository;
+	private final ProductCache productCache;
+	private final ProductSearchIndex productSearchIndex;
+	private final HotSkuInventory hotSkuInventory;
+	
+	// Rows inserted outside JPA (data.sql, other tools) are only picked up by a full rebuild
+	@EventListener(ApplicationReadyEvent.class)
+	public void buildSearchIndex() {
+		forEachProduct(product -> productSearchIndex.index(product.getId(), product.getName(), product.getDescription()));
+	}
+
+	@Override
+	public ProductPage getProducts(UUID after, int limit) {
+		if (limit < 1 || limit > MAX_PAGE_SIZE) {
+			throw new IllegalArgumentException("取得件数は1以上" + MAX_PAGE_SIZE + "以下である必要があります。");
+		}
+		
+		List<ProductView> items = fetchBatch(after, limit);
+		UUID nextCursor = items.size() == limit ? items.get(items.size() - 1).getId() : null;
+		return new ProductPage(items, nextCursor);
+	}
+
+	@Override
+	public void forEachProduct(Consumer<ProductView> action) {
+		UUID cursor = null;
+		List<ProductView> batch;
+		do {
+			// Projections are not managed, so the persistence context does not grow with the catalog
+			batch = fetchBatch(cursor, STREAM_BATCH_SIZE);
+			batch.forEach(action);
+			if (!batch.isEmpty()) {
+				cursor = batch.get(batch.size() - 1).getId();
+			}
+		} while (batch.size() == STREAM_BATCH_SIZE);
+	}
+	
+	private List<ProductView> fetchBatch(UUID after, int limit) {
+		List<ProductView> views = after == null
+			? productRepository.findViewsOrderById(Limit.of(limit))
+			: productRepository.findViewsAfterOrderById(after, Limit.of(limit));
+		views.forEach(this::addAllotted);
+		return views;
+	}
 
 	@Override
-	public List<Product> getAllProducts() {
-		return productRepository.findAll();
+	public ProductView getProduct(UUID id) {
+		return viewOf(findById(id));
 	}
 
 	@Override
 	public Product findById(UUID id) {
-		return productRepository.findById(id)
+		return productCache.get(id, productRepository::findById)
 			.orElseThrow(() -> new NotFoundException(id + " の商品が見つかりません。"));
 	}
 
 	@Override
+	public List<Product> findAllById(Collection<UUID> ids) {
+		Map<UUID, Product> found = productCache.getAll(ids, missing -> productRepository.findAllById(missing).stream()
+			.collect(Collectors.toMap(Product::getId, Function.identity())));
+		return List.copyOf(found.values());
+	}
+
+	@Override
+	public ProductLookup lookupProducts(List<UUID> ids) {
+		if (ids == null || ids.isEmpty() || ids.size() > MAX_LOOKUP_IDS) {
+			throw new IllegalArgumentException("商品IDは1件以上" + MAX_LOOKUP_IDS + "件以下で指定してください。");
+		}
+		
+		Map<UUID, Product> found = new HashMap<>();
+		findAllById(ids).forEach(product -> found.put(product.getId(), product));
+		List<ProductView> items = new ArrayList<>();
+		List<UUID> missingIds = new ArrayList<>();
+		// Answer in the order the ids were asked for, once per id
+		for (UUID id : new LinkedHashSet<>(ids)) {
+			Product product = found.get(id);
+			if (product != null) {
+				items.add(viewOf(product));
+			} else {
+				missingIds.add(id);
+			}
+		}
+		return new ProductLookup(items, missingIds);
+	}
+
+	@Override
+	public List<ProductView> searchProducts(String query, int limit) {
+		if (query == null || query.isBlank()) {
+			throw new IllegalArgumentException("検索キーワードを入力してください。");
+		}
+		if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+			throw new IllegalArgumentException("取得件数は1以上" + MAX_SEARCH_RESULTS + "以下である必要があります。");
+		}
+		
+		List<UUID> rankedIds = productSearchIndex.search(query, limit);
+		if (rankedIds.isEmpty()) {
+			return List.of();
+		}
+		
+		Map<UUID, Integer> rank = new HashMap<>();
+		for (int i = 0; i < rankedIds.size(); i++) {
+			rank.put(rankedIds.get(i), i);
+		}
+		List<ProductView> products = new ArrayList<>(productRepository.findViewsByIdIn(rankedIds));
+		products.forEach(this::addAllotted);
+		products.sort(Comparator.comparing(product -> rank.get(product.getId())));
+		return products;
+	}
+
+	@Override
+	@Transactional
 	public void reduceStock(UUID productId, int quantity) {
 		if (quantity <= 0) {
 			throw new IllegalArgumentException("削減する数量は、0より大きい値である必要があります。");
 		}
 		
-		Product product = productRepository.findById(productId)
-			.orElseThrow(() -> new NotFoundException(productId + " の商品が見つかりません。"));
+		// A hot product is taken from memory as far as it goes; only the rest reaches its row
+		int fromMemory = hotSkuInventory.isHot(productId) ? hotSkuInventory.take(productId, quantity) : 0;
+		if (fromMemory == quantity) {
+			keepTaken(Map.of(productId, fromMemory));
+			return;
+		}
 		
-		if (product.getStock() < quantity) {
-			throw new IllegalArgumentException("在庫不足です。在庫数: " + product.getStock() + ", ご要望数: " + quantity);
+		if (productRepository.decrementStock(productId, quantity - fromMemory) == 0) {
+			if (fromMemory > 0) {
+				hotSkuInventory.giveBack(productId, fromMemory);
+			}
+			// Only the failure path reads the row, to tell a missing product from a stock shortage
+			Product product = productRepository.findById(productId)
+				.orElseThrow(() -> new NotFoundException(productId + " の商品が見つかりません。"));
+			throw new IllegalArgumentException("在庫不足です。在庫数: " + availableStock(product) + ", ご要望数: " + quantity);
 		}
 		
-		product.setStock(product.getStock() - quantity);
-		productRepository.save(product);
+		if (fromMemory > 0) {
+			keepTaken(Map.of(productId, fromMemory));
+		}
+		productCache.evict(productId);
 	}
 
 	@Override
-	public void reduceStock(UUID productId, int quantity) {
-		if (quantity <= 0) {
-			throw new IllegalArgumentException("Quantity to reduce must be greater than 0");
+	@Transactional
+	public Set<UUID> reserveStock(Map<UUID, Integer> quantities) {
+		Set<UUID> shortProductIds = tryReserveStock(quantities);
+		if (!shortProductIds.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()) {
+			// All or nothing: drop whatever else the caller has done in this transaction too
+			TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+		}
+		return shortProductIds;
+	}
+
+	@Override
+	@Transactional
+	public Set<UUID> tryReserveStock(Map<UUID, Integer> quantities) {
+		if (quantities.values().stream().anyMatch(quantity -> quantity == null || quantity <= 0)) {
+			throw new IllegalArgumentException("削減する数量は、0より大きい値である必要があります。");
 		}
 		
-		Product product = productRepository.findById(productId)
-			.orElseThrow(() -> new NotFoundException("Product not found with ID: " + productId));
+		SortedMap<UUID, Integer> rowLines = new TreeMap<>();
+		Map<UUID, Integer> hotTaken = new HashMap<>();
+		Set<UUID> shortProductIds = new LinkedHashSet<>();
+		quantities.forEach((productId, quantity) -> {
+			// A hot product is taken from memory as far as it goes; only the rest reaches its row
+			int fromMemory = hotSkuInventory.isHot(productId) ? hotSkuInventory.take(productId, quantity) : 0;
+			if (fromMemory > 0) {
+				hotTaken.put(productId, fromMemory);
+			}
+			if (fromMemory < quantity) {
+				rowLines.put(productId, quantity - fromMemory);
+			}
+		});
 		
-		if (product.getStock() < quantity) {
-			throw new IllegalArgumentException("Insufficient stock. Available: " + product.getStock() + 
-				", Requested: " + quantity);
+		// Every caller decrements in product id order, so overlapping reservations cannot deadlock
+		if (!rowLines.isEmpty()) {
+			shortProductIds.addAll(productRepository.decrementStockInOrder(rowLines));
+		}
+		if (!shortProductIds.isEmpty()) {
+			// All or nothing: put back the lines that did go through, on rows this transaction already holds
+			hotTaken.forEach(hotSkuInventory::giveBack);
+			rowLines.forEach((productId, quantity) -> {
+				if (!shortProductIds.contains(productId)) {
+					productRepository.incrementStock(productId, quantity);
+				}
+			});
+			return shortProductIds;
 		}
 		
-		product.setStock(product.getStock() - quantity);
-		productRepository.save(product);
+		keepTaken(hotTaken);
+		quantities.keySet().forEach(productCache::evict);
+		return Set.of();
+	}
+	
+	// A hot product's row is short by whatever sits in memory for it
+	private int availableStock(Product product) {
+		return product.getStock() + Math.toIntExact(hotSkuInventory.allotted(product.getId()));
 	}
+	
+	// Views show what is for sale, so a hot product's units in memory count as stock
+	private ProductView viewOf(Product product) {
+		ProductView view = ProductView.from(product);
+		addAllotted(view);
+		return view;
+	}
+	
+	private void addAllotted(ProductView view) {
+		view.setStock(view.getStock() + Math.toIntExact(hotSkuInventory.allotted(view.getId())));
+	}
+	
+	// The sale is recorded in the caller's transaction. Hot products are taken from memory, which a rollback does
+	// not undo, so they are put back by hand
+	private void keepTaken(Map<UUID, Integer> taken) {
+		if (taken.isEmpty()) {
+			return;
+		}
+		hotSkuInventory.recordSold(taken);
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status != STATUS_COMMITTED) {
+					taken.forEach(hotSkuInventory::giveBack);
+				}
+			}
+		});
+	}
+
 }
@@ -1,6 +1,7 @@
+-- price is in minor units (2 decimal places): 149999 = 1,499.99
 INSERT INTO products (id, name, description, price, stock) VALUES
-(RANDOM_UUID(), 'ノートパソコン', '高性能16インチノートパソコン、高解像度ディスプレイ搭載。', 1499.99, 15),
-(RANDOM_UUID(), 'スマートフォン', '最新モデルのスマートフォン、先進的なカメラシステムと長寿命バッテリーを搭載。', 899.99, 25),
-(RANDOM_UUID(), 'ワイヤレスヘッドホン', '没入感のあるオーディオ体験を提供するノイズキャンセリングヘッドホン。', 199.50, 30),
-(RANDOM_UUID(), 'メカニカルキーボード', 'カスタマイズ可能なRGBライティングと触覚キーを備えた高耐久性メカニカルキーボード。', 120.00, 20),
-(RANDOM_UUID(), 'ゲーミングマウス', '競技用ゲーミング向け、高精度エルゴノミクスデザインのマウス。', 75.25, 40);
\ No newline at end of file
+(RANDOM_UUID(7), 'ノートパソコン', '高性能16インチノートパソコン、高解像度ディスプレイ搭載。', 149999, 15),
+(RANDOM_UUID(7), 'スマートフォン', '最新モデルのスマートフォン、先進的なカメラシステムと長寿命バッテリーを搭載。', 89999, 25),
+(RANDOM_UUID(7), 'ワイヤレスヘッドホン', '没入感のあるオーディオ体験を提供するノイズキャンセリングヘッドホン。', 19950, 30),
+(RANDOM_UUID(7), 'メカニカルキーボード', 'カスタマイズ可能なRGBライティングと触覚キーを備えた高耐久性メカニカルキーボード。', 12000, 20),
+(RANDOM_UUID(7), 'ゲーミングマウス', '競技用ゲーミング向け、高精度エルゴノミクスデザインのマウス。', 7525, 40);
\ No newline at end of file
@@ -3,12 +3,13 @@ class MarketplaceApp {
         // Remove cartId from localStorage since we're using sessions now
         this.products = [];
         this.cart = null;
+        this.cartSummary = null;
         this.currentProduct = null;
         
         this.initializeElements();
         this.attachEventListeners();
         this.loadProducts();
-        this.loadCart(); // Load cart by session
+        this.loadCartSummary(); // Only the badge is needed up front; the full cart is loaded on demand
     }
 
     initializeElements() {
@@ -65,7 +66,7 @@ class MarketplaceApp {
             <div class="product-card">
                 <div class="product-name">${this.escapeHtml(product.name)}</div>
                 <div class="product-description">${this.escapeHtml(product.description)}</div>
-                <div class="product-price">$${product.price.toFixed(2)}</div>
+                <div class="product-price">$${this.formatPrice(product.price)}</div>
                 <button class="add-to-cart-btn list-btn-padding" data-product-id="${product.id}" onclick="app.addToCartWithButton('${product.id}', event)">
                     カートに追加
                 </button>
@@ -80,41 +81,28 @@ class MarketplaceApp {
         await this.addToCart(productId, 1);
     }
 
-    async loadCart() {
+    async loadCartSummary() {
         try {
-            const response = await fetch('/api/carts/session');
-            if (!response.ok) throw new Error('Failed to load cart');
+            const response = await fetch('/api/carts/session/summary');
+            if (!response.ok) throw new Error('Failed to load cart summary');
 
-            this.cart = await response.json();
+            this.cartSummary = await response.json();
             this.updateCartCount();
         } catch (error) {
-            console.error('Error loading cart:', error);
-            this.showNotification('カートの読み込みに失敗しました', 'error');
+            console.error('Error loading cart summary:', error);
         }
     }
 
-    async checkout() {
-        if (!this.cart || !this.cart.id) {
-            this.showNotification('チェックアウトするカートがありません', 'error');
-            return;
-        }
-
+    async loadCart() {
         try {
-            const response = await fetch(`/api/carts/${this.cart.id}/checkout`, {
-                method: 'DELETE'
-            });
-
-            if (!response.ok) throw new Error('Checkout failed');
+            const response = await fetch('/api/carts/session');
+            if (!response.ok) throw new Error('Failed to load cart');
 
-            this.showNotification('チェックアウトが完了しました。ご注文ありがとうございます。', 'success');
-            
-            // Reset cart and reload from session
-            this.cart = null;
+            this.cart = await response.json();
             this.updateCartCount();
-            await this.loadCart(); // Reload cart from session
-            this.showProducts();
         } catch (error) {
-            this.showNotification('チェックアウトに失敗しました', 'error');
+            console.error('Error loading cart:', error);
+            this.showNotification('カートの読み込みに失敗しました', 'error');
         }
     }
 
@@ -205,6 +193,9 @@ class MarketplaceApp {
             }
 
             this.currentProduct = await response.json();
+            if (!this.cart) {
+                await this.loadCart(); // Needed to account for quantities already in the cart
+            }
             this.renderProductDetail();
         } catch (error) {
             console.error('Error loading product detail:', error);
@@ -334,7 +325,7 @@ class MarketplaceApp {
         // Check for existing items in cart for this product
         let existingQuantity = 0;
         if (this.cart && this.cart.items) {
-            const existingItem = this.cart.items.find(item => item.product.id === this.currentProduct.id);
+            const existingItem = this.cart.items.find(item => item.productId === this.currentProduct.id);
             if (existingItem) {
                 existingQuantity = existingItem.quantity;
             }
@@ -375,11 +366,12 @@ class MarketplaceApp {
         await this.addToCart(this.currentProduct.id, quantity);
     }
 
-    formatPrice(price) {
+    // Prices arrive as integer minor units (2 decimal places); only convert for display
+    formatPrice(minorUnits) {
         return new Intl.NumberFormat('en-US', {
             minimumFractionDigits: 2,
             maximumFractionDigits: 2
-        }).format(price);
+        }).format(minorUnits / 100);
     }
 
     hideAllSections() {
@@ -390,7 +382,8 @@ class MarketplaceApp {
         }
     }
 
-    showCart() {
+    async showCart() {
+        await this.loadCart();
         if (!this.cart || !this.cart.items || this.cart.items.length === 0) {
             this.cartItems.innerHTML = '<div class="empty-cart">カートは空です</div>';
         } else {
@@ -402,15 +395,13 @@ class MarketplaceApp {
     }
 
     renderCart() {
-        const total = this.cart.items.reduce((sum, item) => 
-            sum + (item.product.price * item.quantity), 0);
-
+        // Line and cart totals come precomputed from the server
         this.cartItems.innerHTML = `
             ${this.cart.items.map(item => `
                 <div class="cart-item">
                     <div class="cart-item-info">
-                        <div class="cart-item-name">${this.escapeHtml(item.product.name)}</div>
-                        <div class="cart-item-price">$${item.product.price.toFixed(2)} each</div>
+                        <div class="cart-item-name">${this.escapeHtml(item.productName)}</div>
+                        <div class="cart-item-price">$${this.formatPrice(item.unitPrice)} each</div>
                     </div>
                     <div class="cart-item-quantity">数量: ${item.quantity}</div>
                 </div>
@@ -419,7 +410,7 @@ class MarketplaceApp {
                 <div class="cart-item-info">
                     <div class="cart-item-name">合計</div>
                 </div>
-                <div class="cart-item-price" style="font-size: 1.2rem;">$${total.toFixed(2)}</div>
+                <div class="cart-item-price" style="font-size: 1.2rem;">$${this.formatPrice(this.cart.total)}</div>
             </div>
         `;
     }
@@ -435,28 +426,51 @@ class MarketplaceApp {
             return;
         }
 
+        // Double clicks and retries after a network error resend the same key, so the order is placed once
+        if (!this.checkoutKey) {
+            this.checkoutKey = this.newIdempotencyKey();
+        }
+
         try {
             const response = await fetch(`/api/carts/${this.cart.id}/checkout`, {
-                method: 'DELETE'
+                method: 'DELETE',
+                headers: {
+                    'Idempotency-Key': this.checkoutKey
+                }
             });
+            // The server answered, so the next checkout is a new attempt
+            this.checkoutKey = null;
 
             if (!response.ok) throw new Error('Checkout failed');
 
             this.showNotification('チェックアウトが完了しました。ご注文ありがとうございます。', 'success');
             
-            // Reset cart and reload from session
+            // Reset cart and refresh the badge from the session's new cart
             this.cart = null;
+            this.cartSummary = null;
             this.updateCartCount();
-            await this.loadCart(); // Reload cart from session
+            await this.loadCartSummary();
             this.showProducts();
         } catch (error) {
             this.showNotification('チェックアウトに失敗しました', 'error');
         }
     }
 
+    newIdempotencyKey() {
+        // crypto.randomUUID is only available on secure origins (https, localhost)
+        if (window.crypto && crypto.randomUUID) {
+            return crypto.randomUUID();
+        }
+        return `${Date.now().toString(36)}-${Math.random().toString(36).slice(2)}-${Math.random().toString(36).slice(2)}`;
+    }
+
     updateCartCount() {
-        const count = this.cart && this.cart.items ? 
-            this.cart.items.reduce((sum, item) => sum + item.quantity, 0) : 0;
+        let count = 0;
+        if (this.cart) {
+            count = this.cart.totalQuantity;
+        } else if (this.cartSummary) {
+            count = this.cartSummary.totalQuantity;
+        }
         this.cartCount.textContent = count;
     }
 
@@ -0,0 +1,115 @@
+package com.example.marketplace.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.marketplace.dto.CheckoutResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CheckoutIdempotencyCacheTest {
+
+    private CheckoutIdempotencyCache cache;
+    private UUID cartId;
+    private AtomicInteger runs;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CheckoutIdempotencyCache(100, Duration.ofHours(24), new SimpleMeterRegistry());
+        cartId = UUID.randomUUID();
+        runs = new AtomicInteger();
+    }
+
+    @Test
+    void checkout_shouldReplayFirstSuccess_withoutRunningAgain() {
+        CheckoutResult first = cache.checkout(cartId, "key-1", () -> success());
+
+        CheckoutResult replay = cache.checkout(cartId, "key-1", () -> success());
+
+        assertSame(first, replay);
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void checkout_shouldRunAgain_afterFailure() {
+        cache.checkout(cartId, "key-1", () -> {
+            runs.incrementAndGet();
+            return CheckoutResult.failure("在庫不足のため、精算に失敗しました。");
+        });
+
+        CheckoutResult retry = cache.checkout(cartId, "key-1", () -> success());
+
+        assertTrue(retry.isSuccess());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void checkout_shouldNotRememberExceptions() {
+        assertThrows(IllegalStateException.class, () -> cache.checkout(cartId, "key-1", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        CheckoutResult retry = cache.checkout(cartId, "key-1", () -> success());
+
+        assertTrue(retry.isSuccess());
+    }
+
+    @Test
+    void checkout_shouldScopeKeysToTheCart() {
+        cache.checkout(cartId, "key-1", () -> success());
+
+        cache.checkout(UUID.randomUUID(), "key-1", () -> success());
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void checkout_shouldMakeConcurrentDuplicatesWaitForTheFirstAttempt() throws Exception {
+        // Given: the first attempt is held open until every duplicate has been submitted
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<CheckoutResult>> futures = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> cache.checkout(cartId, "key-1", () -> {
+                runs.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return CheckoutResult.success("精算が完了しました！ご注文が確定されました。", 1000, UUID.randomUUID());
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        List<CheckoutResult> results = new ArrayList<>();
+        for (Future<CheckoutResult> future : futures) {
+            results.add(future.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // Then
+        assertEquals(1, runs.get());
+        results.forEach(result -> assertSame(results.get(0), result));
+    }
+
+    private CheckoutResult success() {
+        runs.incrementAndGet();
+        return CheckoutResult.success("精算が完了しました！ご注文が確定されました。", 1000, UUID.randomUUID());
+    }
+}
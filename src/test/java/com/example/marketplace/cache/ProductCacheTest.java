@@ -0,0 +1,122 @@
+package com.example.marketplace.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.example.marketplace.entity.Product;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class ProductCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProductCache productCache;
+    private Product product;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        productCache = new ProductCache(2, Duration.ofMinutes(5), meterRegistry);
+        product = new Product(UUID.randomUUID(), "Laptop", 149999, "A powerful laptop", 12);
+        loads = new AtomicInteger();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Optional<Product> load(UUID id) {
+        loads.incrementAndGet();
+        return id.equals(product.getId()) ? Optional.of(product) : Optional.empty();
+    }
+
+    @Test
+    void get_shouldLoadOnce_andRecordHitsAndMisses() {
+        productCache.get(product.getId(), this::load);
+        productCache.get(product.getId(), this::load);
+
+        assertEquals(1, loads.get());
+        assertEquals(1, productCache.stats().hitCount());
+        assertEquals(1, productCache.stats().missCount());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "products").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void get_shouldReturnSnapshot_notTheLoadedInstance() {
+        Product cached = productCache.get(product.getId(), this::load).orElseThrow();
+
+        product.setStock(0);
+
+        assertNotSame(product, cached);
+        assertEquals(12, cached.getStock());
+    }
+
+    @Test
+    void get_shouldNotCacheMissingProducts() {
+        UUID missingId = UUID.randomUUID();
+
+        assertTrue(productCache.get(missingId, this::load).isEmpty());
+        assertTrue(productCache.get(missingId, this::load).isEmpty());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void getAll_shouldLoadOnlyUncachedIds_inOneCall_andLeaveOutMissingOnes() {
+        Product other = new Product(UUID.randomUUID(), "Mouse", 2599, "Wireless mouse", 2);
+        UUID missingId = UUID.randomUUID();
+        productCache.get(product.getId(), this::load);
+        List<Set<UUID>> loaderCalls = new ArrayList<>();
+
+        Map<UUID, Product> found = productCache.getAll(List.of(product.getId(), other.getId(), missingId), ids -> {
+            loaderCalls.add(ids);
+            return Map.of(other.getId(), other);
+        });
+
+        assertEquals(Set.of(product.getId(), other.getId()), found.keySet());
+        assertEquals(List.of(Set.of(other.getId(), missingId)), loaderCalls);
+        assertNotSame(other, found.get(other.getId()));
+    }
+
+    @Test
+    void evict_shouldForceReload() {
+        productCache.get(product.getId(), this::load);
+
+        productCache.evict(product.getId());
+        productCache.get(product.getId(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evict_shouldEvictAgainWhenTransactionCompletes() {
+        TransactionSynchronizationManager.initSynchronization();
+        productCache.evict(product.getId());
+
+        // A concurrent reader repopulates the entry before the writer commits
+        productCache.get(product.getId(), this::load);
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        productCache.get(product.getId(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.marketplace.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SessionCartCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SessionCartCache sessionCartCache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sessionCartCache = new SessionCartCache(100, Duration.ofMinutes(30), meterRegistry);
+    }
+
+    @Test
+    void get_shouldReturnEmpty_whenSessionIsUnknown() {
+        assertTrue(sessionCartCache.get("unknown").isEmpty());
+    }
+
+    @Test
+    void put_shouldMapSessionToCartId() {
+        UUID cartId = UUID.randomUUID();
+
+        sessionCartCache.put("session", cartId);
+
+        assertEquals(Optional.of(cartId), sessionCartCache.get("session"));
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "sessionCarts").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void evict_shouldRemoveMapping() {
+        sessionCartCache.put("session", UUID.randomUUID());
+
+        sessionCartCache.evict("session");
+
+        assertTrue(sessionCartCache.get("session").isEmpty());
+    }
+
+    @Test
+    void evictAll_shouldRemoveOnlyGivenMappings() {
+        UUID keptCartId = UUID.randomUUID();
+        sessionCartCache.put("first", UUID.randomUUID());
+        sessionCartCache.put("second", UUID.randomUUID());
+        sessionCartCache.put("kept", keptCartId);
+
+        sessionCartCache.evictAll(List.of("first", "second"));
+
+        assertTrue(sessionCartCache.get("first").isEmpty());
+        assertTrue(sessionCartCache.get("second").isEmpty());
+        assertEquals(Optional.of(keptCartId), sessionCartCache.get("kept"));
+    }
+}
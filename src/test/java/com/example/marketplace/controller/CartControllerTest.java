@@ -4,24 +4,35 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CartLineView;
+import com.example.marketplace.dto.CartSummary;
+import com.example.marketplace.dto.CartView;
+import com.example.marketplace.dto.CheckoutJobView;
 import com.example.marketplace.dto.CheckoutResult;
-import com.example.marketplace.entity.Cart;
+import com.example.marketplace.exception.CheckoutQueueFullException;
 import com.example.marketplace.exception.NotFoundException;
 import com.example.marketplace.service.CartService;
+import com.example.marketplace.service.CheckoutJobService;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.HashSet;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -30,6 +41,7 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockHttpSession;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(CartController.class)
 class CartControllerTest {
@@ -40,19 +52,22 @@ class CartControllerTest {
     @MockBean
     private CartService cartService;
 
+    @MockBean
+    private CheckoutJobService checkoutJobService;
+
     @Autowired
     private ObjectMapper objectMapper;
 
     private UUID cartId;
     private UUID productId;
-    private Cart cart;
+    private CartView cart;
     private MockHttpSession session;
 
     @BeforeEach
     void setUp() {
         cartId = UUID.randomUUID();
         productId = UUID.randomUUID();
-        cart = new Cart(cartId, "test-session-id", null, null, new HashSet<>());
+        cart = new CartView(cartId, List.of(), 0, 0);
         session = new MockHttpSession(null, "test-session-id");
     }
 
@@ -74,6 +89,21 @@ class CartControllerTest {
         verify(cartService).getCart(cartId);
     }
 
+    @Test
+    void getCart_shouldReturnLineAndCartTotals() throws Exception {
+        CartLineView line = new CartLineView(UUID.randomUUID(), productId, "Laptop", 1000, 3, 3000);
+        when(cartService.getCart(cartId)).thenReturn(CartView.of(cartId, List.of(line)));
+
+        mockMvc.perform(get("/api/carts/{id}", cartId))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items[0].productId").value(productId.toString()))
+            .andExpect(jsonPath("$.items[0].productName").value("Laptop"))
+            .andExpect(jsonPath("$.items[0].lineTotal").value(3000))
+            .andExpect(jsonPath("$.items[0].product").doesNotExist())
+            .andExpect(jsonPath("$.totalQuantity").value(3))
+            .andExpect(jsonPath("$.total").value(3000));
+    }
+
     @Test
     void getCart_shouldReturnNotFound_whenCartDoesNotExist() throws Exception {
         when(cartService.getCart(cartId)).thenThrow(new NotFoundException("カートが見つかりません。"));
@@ -118,10 +148,42 @@ class CartControllerTest {
         verify(cartService, never()).addProductToCart(any(), any(), anyInt());
     }
 
+    @Test
+    void addProductsToCart_shouldPassAllLinesToService() throws Exception {
+        UUID otherProductId = UUID.randomUUID();
+        when(cartService.addProductsToCart(any(), any())).thenReturn(cart);
+
+        mockMvc.perform(post("/api/carts/{id}/add-products", cartId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"items\": [" + createAddToCartRequestBody(productId, 2) + ","
+                    + createAddToCartRequestBody(otherProductId, 1) + "]}"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(cartId.toString()));
+
+        verify(cartService).addProductsToCart(eq(cartId), argThat(lines -> lines.size() == 2
+            && lines.get(0).getProductId().equals(productId) && lines.get(0).getQuantity() == 2
+            && lines.get(1).getProductId().equals(otherProductId) && lines.get(1).getQuantity() == 1));
+    }
+
+    @Test
+    void addProductsToCart_shouldReturnBadRequest_whenAnyLineIsInvalidOrListIsEmpty() throws Exception {
+        mockMvc.perform(post("/api/carts/{id}/add-products", cartId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"items\": [" + createAddToCartRequestBody(productId, 2) + ", {\"quantity\": 0}]}"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.details['items[1].productId']").exists());
+
+        mockMvc.perform(post("/api/carts/{id}/add-products", cartId)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"items\": []}"))
+            .andExpect(status().isBadRequest());
+
+        verify(cartService, never()).addProductsToCart(any(), any());
+    }
+
     @Test
     void addProductToCartBySession_shouldReturnUpdatedCart() throws Exception {
-        when(cartService.getOrCreateCartBySession(session.getId())).thenReturn(cart);
-        when(cartService.addProductToCart(cart.getId(), productId, 1)).thenReturn(cart);
+        when(cartService.addProductToCartBySession(session.getId(), productId, 1)).thenReturn(cart);
 
         mockMvc.perform(post("/api/carts/session/add-product")
                 .session(session)
@@ -130,8 +192,8 @@ class CartControllerTest {
             .andExpect(status().isOk())
             .andExpect(jsonPath("$.id").value(cartId.toString()));
 
-        verify(cartService).getOrCreateCartBySession(session.getId());
-        verify(cartService).addProductToCart(cart.getId(), productId, 1);
+        verify(cartService).addProductToCartBySession(session.getId(), productId, 1);
+        verify(cartService, never()).getOrCreateCartBySession(anyString());
     }
 
     @Test
@@ -145,37 +207,150 @@ class CartControllerTest {
         verify(cartService).getOrCreateCartBySession(session.getId());
     }
 
+    @Test
+    void getCartSummary_shouldReturnTotals() throws Exception {
+        when(cartService.getCartSummary(cartId)).thenReturn(new CartSummary(cartId, 2, 5, 2750));
+
+        mockMvc.perform(get("/api/carts/{id}/summary", cartId))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.cartId").value(cartId.toString()))
+            .andExpect(jsonPath("$.lineCount").value(2))
+            .andExpect(jsonPath("$.totalQuantity").value(5))
+            .andExpect(jsonPath("$.totalPrice").value(2750));
+    }
+
+    @Test
+    void getCartSummaryBySession_shouldNotLoadCart() throws Exception {
+        when(cartService.getCartSummaryBySession(session.getId())).thenReturn(new CartSummary(cartId, 1, 3, 3000));
+
+        mockMvc.perform(get("/api/carts/session/summary").session(session))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.totalQuantity").value(3));
+
+        verify(cartService, never()).getOrCreateCartBySession(anyString());
+    }
+
+    @Test
+    void clearCart_shouldReturnEmptyCart() throws Exception {
+        when(cartService.clearCart(cartId)).thenReturn(CartView.of(cartId, List.of()));
+
+        mockMvc.perform(delete("/api/carts/{id}/items", cartId))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items").isEmpty())
+            .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @Test
+    void clearCartBySession_shouldClearSessionCart() throws Exception {
+        when(cartService.clearCartBySession(session.getId())).thenReturn(CartView.of(cartId, List.of()));
+
+        mockMvc.perform(delete("/api/carts/session/items").session(session))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.id").value(cartId.toString()));
+
+        verify(cartService).clearCartBySession(session.getId());
+    }
+
+    @Test
+    void clearCart_shouldReturnNotFound_whenCartDoesNotExist() throws Exception {
+        when(cartService.clearCart(cartId)).thenThrow(new NotFoundException("カートが見つかりません。"));
+
+        mockMvc.perform(delete("/api/carts/{id}/items", cartId))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     void checkout_shouldReturnSuccessMessage_whenCheckoutSucceeds() throws Exception {
     	String responseMessage = "Checkout successful!";
-        when(cartService.checkout(cartId)).thenReturn(CheckoutResult.success(responseMessage));
+        when(cartService.checkout(cartId, null)).thenReturn(CheckoutResult.success(responseMessage, 2750, UUID.randomUUID()));
 
         mockMvc.perform(delete("/api/carts/{id}/checkout", cartId))
             .andExpect(status().isOk())
-            .andExpect(content().string(containsString(responseMessage)));
+            .andExpect(content().string(containsString(responseMessage)))
+            .andExpect(jsonPath("$.total").value(2750));
 
-        verify(cartService).checkout(cartId);
+        verify(cartService).checkout(cartId, null);
+    }
+
+    @Test
+    void checkout_shouldPassIdempotencyKeyHeader() throws Exception {
+        when(cartService.checkout(cartId, "order-attempt-1")).thenReturn(CheckoutResult.success("Checkout successful!", 2750, UUID.randomUUID()));
+
+        mockMvc.perform(delete("/api/carts/{id}/checkout", cartId).header("Idempotency-Key", "order-attempt-1"))
+            .andExpect(status().isOk());
+
+        verify(cartService).checkout(cartId, "order-attempt-1");
     }
 
     @Test
     void checkout_shouldReturnBadRequest_whenCheckoutFails() throws Exception {
     	String responseMessage = "在庫不足です。";
-        when(cartService.checkout(cartId)).thenReturn(CheckoutResult.failure(responseMessage));
+        when(cartService.checkout(cartId, null)).thenReturn(CheckoutResult.failure(responseMessage));
 
         mockMvc.perform(delete("/api/carts/{id}/checkout", cartId))
             .andExpect(status().is4xxClientError())
             .andExpect(content().string(containsString(responseMessage)));
 
-        verify(cartService).checkout(cartId);
+        verify(cartService).checkout(cartId, null);
     }
 
     @Test
     void checkout_shouldReturnNotFound_whenCartDoesNotExist() throws Exception {
-        when(cartService.checkout(cartId)).thenThrow(new NotFoundException("カートが見つかりません。"));
+        when(cartService.checkout(cartId, null)).thenThrow(new NotFoundException("カートが見つかりません。"));
 
         mockMvc.perform(delete("/api/carts/{id}/checkout", cartId))
             .andExpect(status().isNotFound());
 
-        verify(cartService).checkout(cartId);
+        verify(cartService).checkout(cartId, null);
+    }
+
+    @Test
+    void submitCheckout_shouldReturnAcceptedWithLocation() throws Exception {
+        UUID jobId = UUID.randomUUID();
+        when(checkoutJobService.submit(cartId, "order-attempt-1"))
+            .thenReturn(new CheckoutJobView(jobId, cartId, CheckoutJobView.Status.QUEUED, null));
+
+        mockMvc.perform(post("/api/carts/{id}/checkout-jobs", cartId).header("Idempotency-Key", "order-attempt-1"))
+            .andExpect(status().isAccepted())
+            .andExpect(header().string("Location", "/api/carts/" + cartId + "/checkout-jobs/" + jobId))
+            .andExpect(jsonPath("$.id").value(jobId.toString()))
+            .andExpect(jsonPath("$.status").value("QUEUED"));
+
+        verify(cartService, never()).checkout(any(), any());
+    }
+
+    @Test
+    void submitCheckout_shouldReturnServiceUnavailable_whenQueueIsFull() throws Exception {
+        when(checkoutJobService.submit(cartId, null)).thenThrow(new CheckoutQueueFullException("精算の受付が混み合っています。"));
+
+        mockMvc.perform(post("/api/carts/{id}/checkout-jobs", cartId))
+            .andExpect(status().isServiceUnavailable())
+            .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    void getCheckoutJob_shouldReturnJobWithResult() throws Exception {
+        UUID jobId = UUID.randomUUID();
+        CheckoutJobView job = new CheckoutJobView(jobId, cartId, CheckoutJobView.Status.SUCCEEDED,
+            CheckoutResult.success("Checkout successful!", 2750, UUID.randomUUID()));
+        when(checkoutJobService.awaitJob(cartId, jobId, 10)).thenReturn(CompletableFuture.completedFuture(job));
+
+        MvcResult pending = mockMvc.perform(get("/api/carts/{id}/checkout-jobs/{jobId}", cartId, jobId).param("waitSeconds", "10"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status").value("SUCCEEDED"))
+            .andExpect(jsonPath("$.result.total").value(2750));
+    }
+
+    @Test
+    void getCheckoutJob_shouldReturnNotFound_whenJobIsUnknown() throws Exception {
+        UUID jobId = UUID.randomUUID();
+        when(checkoutJobService.awaitJob(cartId, jobId, 0)).thenThrow(new NotFoundException("精算ジョブが見つかりません。"));
+
+        mockMvc.perform(get("/api/carts/{id}/checkout-jobs/{jobId}", cartId, jobId))
+            .andExpect(status().isNotFound());
     }
 }
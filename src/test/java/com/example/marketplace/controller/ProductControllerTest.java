@@ -3,26 +3,32 @@ package com.example.marketplace.controller;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
-import com.example.marketplace.entity.Product;
+import com.example.marketplace.dto.ProductLookup;
+import com.example.marketplace.dto.ProductPage;
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.exception.NotFoundException;
 import com.example.marketplace.service.CartService;
 import com.example.marketplace.service.ProductService;
-import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(ProductController.class)
 class ProductControllerTest {
@@ -38,54 +44,140 @@ class ProductControllerTest {
     private CartService cartService;
 
     @Test
-    void getAllProducts_shouldReturnListOfProducts() throws Exception {
-        Product product1 = new Product(UUID.randomUUID(), "Laptop", 1500.00, "High-end laptop", 10);
-        Product product2 = new Product(UUID.randomUUID(), "Mouse", 75.50, "Gaming mouse", 50);
-        when(productService.getAllProducts()).thenReturn(List.of(product1, product2));
-
-        mockMvc.perform(get("/api/products"))
+    void getAllProducts_shouldStreamListOfProducts() throws Exception {
+        ProductView product1 = new ProductView(UUID.randomUUID(), "Laptop", 150000, "High-end laptop", 10);
+        ProductView product2 = new ProductView(UUID.randomUUID(), "Mouse", 7550, "Gaming mouse", 50);
+        doAnswer(invocation -> {
+            Consumer<ProductView> action = invocation.getArgument(0);
+            action.accept(product1);
+            action.accept(product2);
+            return null;
+        }).when(productService).forEachProduct(any());
+
+        MvcResult mvcResult = mockMvc.perform(get("/api/products"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk())
             .andExpect(jsonPath("$", hasSize(2)))
             .andExpect(jsonPath("$[0].name", is("Laptop")))
             .andExpect(jsonPath("$[1].name", is("Mouse")));
 
-        verify(productService).getAllProducts();
+        verify(productService).forEachProduct(any());
     }
 
     @Test
-    void getAllProducts_shouldReturnEmptyList_whenNoProductsExist() throws Exception {
-        when(productService.getAllProducts()).thenReturn(Collections.emptyList());
+    void getAllProducts_shouldStreamEmptyList_whenNoProductsExist() throws Exception {
+        MvcResult mvcResult = mockMvc.perform(get("/api/products"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
 
-        mockMvc.perform(get("/api/products"))
+        mockMvc.perform(asyncDispatch(mvcResult))
             .andExpect(status().isOk())
             .andExpect(jsonPath("$", hasSize(0)));
 
-        verify(productService).getAllProducts();
+        verify(productService).forEachProduct(any());
+    }
+
+    @Test
+    void getProductPage_shouldReturnItemsAndNextCursor() throws Exception {
+        UUID after = UUID.randomUUID();
+        ProductView product = new ProductView(UUID.randomUUID(), "Laptop", 150000, "High-end laptop", 10);
+        when(productService.getProducts(after, 1)).thenReturn(new ProductPage(List.of(product), product.getId()));
+
+        mockMvc.perform(get("/api/products").param("after", after.toString()).param("limit", "1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items", hasSize(1)))
+            .andExpect(jsonPath("$.items[0].name", is("Laptop")))
+            .andExpect(jsonPath("$.nextCursor", is(product.getId().toString())));
+
+        verify(productService).getProducts(after, 1);
+        verify(productService, never()).forEachProduct(any());
+    }
+
+    @Test
+    void getProductPage_shouldReturnBadRequest_whenLimitIsOutOfRange() throws Exception {
+        when(productService.getProducts(null, 0)).thenThrow(new IllegalArgumentException("取得件数は1以上500以下である必要があります。"));
+
+        mockMvc.perform(get("/api/products").param("limit", "0"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message", is("取得件数は1以上500以下である必要があります。")));
+    }
+
+    @Test
+    void getProductsByIds_shouldReturnFoundProductsAndMissingIds() throws Exception {
+        ProductView product = new ProductView(UUID.randomUUID(), "Laptop", 150000, "High-end laptop", 10);
+        UUID missingId = UUID.randomUUID();
+        when(productService.lookupProducts(List.of(product.getId(), missingId)))
+            .thenReturn(new ProductLookup(List.of(product), List.of(missingId)));
+
+        mockMvc.perform(get("/api/products").param("ids", product.getId().toString(), missingId.toString()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.items", hasSize(1)))
+            .andExpect(jsonPath("$.items[0].name", is("Laptop")))
+            .andExpect(jsonPath("$.missingIds[0]", is(missingId.toString())));
+
+        verify(productService, never()).forEachProduct(any());
+    }
+
+    @Test
+    void getProductsByIds_shouldAcceptCommaSeparatedIds() throws Exception {
+        UUID id1 = UUID.randomUUID();
+        UUID id2 = UUID.randomUUID();
+        when(productService.lookupProducts(List.of(id1, id2))).thenReturn(new ProductLookup(List.of(), List.of(id1, id2)));
+
+        mockMvc.perform(get("/api/products").param("ids", id1 + "," + id2))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.missingIds", hasSize(2)));
+    }
+
+    @Test
+    void searchProducts_shouldReturnRankedProducts() throws Exception {
+        ProductView product = new ProductView(UUID.randomUUID(), "ノートパソコン", 149999, "高性能ノートパソコン", 15);
+        when(productService.searchProducts("パソコン", 20)).thenReturn(List.of(product));
+
+        mockMvc.perform(get("/api/products/search").param("q", "パソコン"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$", hasSize(1)))
+            .andExpect(jsonPath("$[0].name", is("ノートパソコン")));
+
+        verify(productService).searchProducts("パソコン", 20);
+        verify(productService, never()).getProduct(any());
+    }
+
+    @Test
+    void searchProducts_shouldReturnBadRequest_whenQueryIsMissing() throws Exception {
+        when(productService.searchProducts(null, 20)).thenThrow(new IllegalArgumentException("検索キーワードを入力してください。"));
+
+        mockMvc.perform(get("/api/products/search"))
+            .andExpect(status().isBadRequest())
+            .andExpect(jsonPath("$.message", is("検索キーワードを入力してください。")));
     }
 
     @Test
     void getProductById_shouldReturnProduct_whenProductExists() throws Exception {
         UUID productId = UUID.randomUUID();
-        Product product = new Product(productId, "Keyboard", 120.00, "Mechanical keyboard", 25);
-        when(productService.findById(productId)).thenReturn(product);
+        ProductView product = new ProductView(productId, "Keyboard", 12000, "Mechanical keyboard", 25);
+        when(productService.getProduct(productId)).thenReturn(product);
 
         mockMvc.perform(get("/api/products/{id}", productId))
             .andExpect(status().isOk())
             .andExpect(jsonPath("$.id", is(productId.toString())))
             .andExpect(jsonPath("$.name", is("Keyboard")));
 
-        verify(productService).findById(productId);
+        verify(productService).getProduct(productId);
     }
 
     @Test
     void getProductById_shouldReturnNotFound_whenProductDoesNotExist() throws Exception {
         UUID productId = UUID.randomUUID();
-        when(productService.findById(productId)).thenThrow(new NotFoundException("商品が見つかりません。"));
+        when(productService.getProduct(productId)).thenThrow(new NotFoundException("商品が見つかりません。"));
 
         mockMvc.perform(get("/api/products/{id}", productId))
             .andExpect(status().isNotFound());
 
-        verify(productService).findById(productId);
+        verify(productService).getProduct(productId);
     }
 
     @Test
@@ -94,7 +186,7 @@ class ProductControllerTest {
         mockMvc.perform(get("/api/products/{id}", "invalid-uuid"))
             .andExpect(status().isBadRequest());
 
-        verify(productService, never()).findById(any());
+        verify(productService, never()).getProduct(any());
     }
 
     @Test
@@ -109,6 +201,6 @@ class ProductControllerTest {
                 .andExpect(jsonPath("$.status").value(400))
                 .andExpect(jsonPath("$.message").value("商品IDの形式が無効です。有効なUUIDを指定してください。"));
 
-        verify(productService, never()).findById(any());
+        verify(productService, never()).getProduct(any());
     }
 }
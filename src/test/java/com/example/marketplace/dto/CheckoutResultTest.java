@@ -6,6 +6,7 @@ import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.List;
+import java.util.UUID;
 import org.junit.jupiter.api.Test;
 
 class CheckoutResultTest {
@@ -14,14 +15,17 @@ class CheckoutResultTest {
     void success_shouldCreateSuccessfulResult() {
         // Given
         String message = "ご注文が正常に完了しました。";
+        UUID orderId = UUID.randomUUID();
 
         // When
-        CheckoutResult result = CheckoutResult.success(message);
+        CheckoutResult result = CheckoutResult.success(message, 149999, orderId);
 
         // Then
         assertTrue(result.isSuccess());
         assertEquals(message, result.getMessage());
         assertNull(result.getErrors());
+        assertEquals(149999, result.getTotal());
+        assertEquals(orderId, result.getOrderId());
     }
 
     @Test
@@ -37,6 +41,7 @@ class CheckoutResultTest {
         assertFalse(result.isSuccess());
         assertEquals(message, result.getMessage());
         assertEquals(errors, result.getErrors());
+        assertNull(result.getTotal());
     }
 
     @Test
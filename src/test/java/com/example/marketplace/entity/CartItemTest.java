@@ -28,7 +28,7 @@ class CartItemTest {
         cart.setId(UUID.randomUUID());
         cart.setSessionId("test-session");
 
-        product = new Product(UUID.randomUUID(), "Test Product", 10.99, "A description", 100);
+        product = new Product(UUID.randomUUID(), "Test Product", 1099, "A description", 100);
     }
 
     @Test
@@ -51,7 +51,7 @@ class CartTest {
     void shouldCorrectlyAddItem() {
         Cart cart = new Cart();
         cart.setSessionId("session-1");
-        Product product = new Product(UUID.randomUUID(), "Test Product", 10.0, "Desc", 10);
+        Product product = new Product(UUID.randomUUID(), "Test Product", 1000, "Desc", 10);
         CartItem item = new CartItem(UUID.randomUUID(), product, 1, cart);
 
         cart.getItems().add(item);
@@ -0,0 +1,86 @@
+package com.example.marketplace.entity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Compares cart inserts keyed by random UUIDs with time-ordered UUIDv7 keys on a file-backed H2 database.
+// Excluded from the normal build; run with: mvn test -Pbenchmark
+@Tag("benchmark")
+class UuidV7InsertBenchmarkTest {
+
+    private static final int ROWS = 300_000;
+    private static final int BATCH_SIZE = 1_000;
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void timeOrderedIds_shouldInsertFasterThanRandomIds() throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:" + dataDir.resolve("bench"), "sa", "")) {
+            connection.setAutoCommit(false);
+
+            // Warm up the JIT and the driver before measuring either strategy
+            run(connection, "carts_warmup", UUID::randomUUID, ROWS / 10);
+
+            Result random = run(connection, "carts_random", UUID::randomUUID, ROWS);
+            Result timeOrdered = run(connection, "carts_v7", UuidV7Generator::next, ROWS);
+
+            System.out.printf("%-12s %10s %14s%n", "ids", "rows/s", "disk bytes");
+            System.out.printf("%-12s %10.0f %14d%n", "random", random.rowsPerSecond(), random.diskBytes());
+            System.out.printf("%-12s %10.0f %14d%n", "uuidv7", timeOrdered.rowsPerSecond(), timeOrdered.diskBytes());
+
+            // H2's MVStore rewrites pages copy-on-write and compacts them, so on-disk size comes out about the
+            // same for both; the locality win shows up as throughput. It is printed for comparison only.
+            assertThat(timeOrdered.rowsPerSecond()).isGreaterThan(random.rowsPerSecond());
+        }
+    }
+
+    private Result run(Connection connection, String table, Supplier<UUID> ids, int rows) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table " + table
+                    + " (id uuid primary key, session_id varchar(255) not null, created_at timestamp)");
+        }
+
+        long start = System.nanoTime();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into " + table + " (id, session_id, created_at) values (?, ?, ?)")) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (int i = 1; i <= rows; i++) {
+                insert.setObject(1, ids.get());
+                insert.setString(2, "session-" + i);
+                insert.setTimestamp(3, now);
+                insert.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("checkpoint");
+            try (ResultSet rs = statement.executeQuery("select disk_space_used('" + table.toUpperCase() + "')")) {
+                rs.next();
+                return new Result(rows / seconds, rs.getLong(1));
+            }
+        }
+    }
+
+    private record Result(double rowsPerSecond, long diskBytes) {
+    }
+}
@@ -52,6 +52,14 @@ class GlobalExceptionHandlerTest {
             .andExpect(jsonPath("$.message", is("テスト用リソースが見つかりません。")));
     }
 
+    @Test
+    void handleOptimisticLockingFailure_shouldReturnConflict() throws Exception {
+        mockMvc.perform(get("/test-exceptions/optimistic-conflict"))
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("$.status", is(409)))
+            .andExpect(jsonPath("$.message", is("他の操作と競合したため、処理できませんでした。もう一度お試しください。")));
+    }
+
     @Test
     void handleMethodArgumentTypeMismatch_shouldReturnBadRequest() throws Exception {
         mockMvc.perform(get("/test-exceptions/type-mismatch/{id}", "not-a-uuid"))
@@ -3,6 +3,7 @@ package com.example.marketplace.exception;
 import com.example.marketplace.dto.AddToCartRequest;
 import jakarta.validation.Valid;
 import java.util.UUID;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -33,6 +34,11 @@ public class GlobalExceptionHandlerTestController {
         throw new NotFoundException("テスト用リソースが見つかりません。");
     }
 
+    @GetMapping("/optimistic-conflict")
+    public void triggerOptimisticLockingFailure() {
+        throw new ObjectOptimisticLockingFailureException("Cart", UUID.randomUUID());
+    }
+
     @GetMapping("/type-mismatch/{id}")
     public void triggerTypeMismatchException(@PathVariable("id") UUID id) {
         // This will trigger MethodArgumentTypeMismatchException if a non-UUID is passed
@@ -0,0 +1,133 @@
+package com.example.marketplace.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.UuidV7Generator;
+import com.example.marketplace.service.CartService;
+
+// Checks out one-line carts of a single product from many threads at once, first for an ordinary product whose
+// row every checkout updates, then for the same setup flagged as a hot SKU.
+// Excluded from the normal build; run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "marketplace.hot-skus.product-ids=" + HotSkuCheckoutBenchmarkTest.HOT_ID,
+    "logging.level.root=INFO",
+    "spring.jpa.show-sql=false"
+})
+class HotSkuCheckoutBenchmarkTest {
+
+    static final String HOT_ID = "01900000-0000-7000-8000-000000000001";
+    static final String COLD_ID = "01900000-0000-7000-8000-000000000002";
+
+    private static final int CARTS = 2_000;
+    private static final int THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private HotSkuInventory hotSkuInventory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        hotSkuInventory.returnAllotments();
+        jdbcTemplate.update("delete from cart_items where product_id in (?, ?)", UUID.fromString(HOT_ID), UUID.fromString(COLD_ID));
+        jdbcTemplate.update("delete from carts where session_id like 'bench-%'");
+        jdbcTemplate.update("delete from products where id in (?, ?)", UUID.fromString(HOT_ID), UUID.fromString(COLD_ID));
+    }
+
+    @Test
+    void hotSku_shouldCheckOutFasterThanRowPerCheckout() throws Exception {
+        insertProduct(COLD_ID);
+        insertProduct(HOT_ID);
+
+        // Warm up the JIT, the connection pool and the statement caches on both paths
+        run(COLD_ID, CARTS / 10);
+        run(HOT_ID, CARTS / 10);
+
+        double row = run(COLD_ID, CARTS);
+        double hot = run(HOT_ID, CARTS);
+
+        System.out.printf("%-10s %12s (%d threads)%n", "stock", "checkouts/s", THREADS);
+        System.out.printf("%-10s %12.0f%n", "row", row);
+        System.out.printf("%-10s %12.0f%n", "hot-sku", hot);
+
+        hotSkuInventory.returnAllotments();
+        Integer stockLeft = jdbcTemplate.queryForObject("select stock from products where id = ?", Integer.class,
+                UUID.fromString(HOT_ID));
+        assertThat(stockLeft).isEqualTo(CARTS * 2 - CARTS / 10 - CARTS);
+        assertThat(hot).isGreaterThan(row);
+    }
+
+    private void insertProduct(String id) {
+        jdbcTemplate.update("insert into products (id, name, price, description, stock) values (?, ?, ?, ?, ?)",
+                UUID.fromString(id), "Bench " + id, 1000, "Benchmark product", CARTS * 2);
+    }
+
+    // Returns checkouts per second
+    private double run(String productId, int carts) throws Exception {
+        List<UUID> cartIds = insertCarts(UUID.fromString(productId), carts);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < cartIds.size(); i = next.getAndIncrement()) {
+                    CheckoutResult result = cartService.checkout(cartIds.get(i));
+                    if (!result.isSuccess()) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(failed.get()).isZero();
+        return carts / seconds;
+    }
+
+    private List<UUID> insertCarts(UUID productId, int carts) {
+        List<UUID> cartIds = new ArrayList<>();
+        List<Object[]> cartRows = new ArrayList<>();
+        List<Object[]> itemRows = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < carts; i++) {
+            UUID cartId = UuidV7Generator.next();
+            cartIds.add(cartId);
+            cartRows.add(new Object[] {cartId, "bench-" + cartId, now, now});
+            itemRows.add(new Object[] {UuidV7Generator.next(), productId, 1, cartId});
+        }
+        jdbcTemplate.batchUpdate("insert into carts (id, session_id, created_at, updated_at) values (?, ?, ?, ?)", cartRows);
+        jdbcTemplate.batchUpdate("insert into cart_items (id, product_id, quantity, cart_id) values (?, ?, ?, ?)", itemRows);
+        return cartIds;
+    }
+}
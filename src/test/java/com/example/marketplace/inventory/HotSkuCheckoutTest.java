@@ -0,0 +1,119 @@
+package com.example.marketplace.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.UuidV7Generator;
+import com.example.marketplace.service.CartService;
+
+// Checks out a hot product from more threads than the connection pool has connections. Every checkout holds
+// one connection for its transaction, so nothing on its path may need a second one
+@SpringBootTest(properties = {
+    "marketplace.hot-skus.product-ids=" + HotSkuCheckoutTest.HOT_ID,
+    "marketplace.hot-skus.allotment=20",
+    "spring.datasource.hikari.maximum-pool-size=3",
+    "spring.datasource.hikari.connection-timeout=2000"
+})
+class HotSkuCheckoutTest {
+
+    static final String HOT_ID = "01900000-0000-7000-8000-000000000004";
+
+    private static final int STOCK = 500;
+    private static final int CARTS = 300;
+    private static final int THREADS = 12;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private HotSkuInventory hotSkuInventory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        hotSkuInventory.returnAllotments();
+        jdbcTemplate.update("delete from cart_items where product_id = ?", UUID.fromString(HOT_ID));
+        jdbcTemplate.update("delete from carts where session_id like 'hot-checkout-%'");
+        jdbcTemplate.update("delete from products where id = ?", UUID.fromString(HOT_ID));
+    }
+
+    @Test
+    void checkout_shouldSucceed_whenMoreThreadsThanPooledConnectionsBuyTheHotProduct() throws Exception {
+        // Given
+        jdbcTemplate.update("insert into products (id, name, price, description, stock) values (?, ?, ?, ?, ?)",
+                UUID.fromString(HOT_ID), "Hot product", 1000, "Sold from memory", STOCK);
+        List<UUID> cartIds = insertCarts();
+        AtomicInteger next = new AtomicInteger();
+        List<CheckoutResult> failures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        // When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < cartIds.size(); i = next.getAndIncrement()) {
+                    CheckoutResult result = cartService.checkout(cartIds.get(i));
+                    if (!result.isSuccess()) {
+                        synchronized (failures) {
+                            failures.add(result);
+                        }
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        assertThat(failures).isEmpty();
+        // Every claim and every sale from memory is on record, so a crash here would lose nothing
+        assertThat(recordedAllotment()).isEqualTo(hotSkuInventory.allotted(UUID.fromString(HOT_ID)));
+        hotSkuInventory.returnAllotments();
+        assertThat(recordedAllotment()).isZero();
+        Integer stockLeft = jdbcTemplate.queryForObject("select stock from products where id = ?", Integer.class,
+                UUID.fromString(HOT_ID));
+        assertThat(stockLeft).isEqualTo(STOCK - CARTS);
+    }
+
+    private long recordedAllotment() {
+        return jdbcTemplate.queryForObject("select coalesce(sum(units), 0) from hot_sku_allotments where product_id = ?",
+                Long.class, UUID.fromString(HOT_ID));
+    }
+
+    private List<UUID> insertCarts() {
+        List<UUID> cartIds = new ArrayList<>();
+        List<Object[]> cartRows = new ArrayList<>();
+        List<Object[]> itemRows = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < CARTS; i++) {
+            UUID cartId = UuidV7Generator.next();
+            cartIds.add(cartId);
+            cartRows.add(new Object[] {cartId, "hot-checkout-" + cartId, now, now});
+            itemRows.add(new Object[] {UuidV7Generator.next(), UUID.fromString(HOT_ID), 1, cartId});
+        }
+        jdbcTemplate.batchUpdate("insert into carts (id, session_id, created_at, updated_at) values (?, ?, ?, ?)", cartRows);
+        jdbcTemplate.batchUpdate("insert into cart_items (id, product_id, quantity, cart_id) values (?, ?, ?, ?)", itemRows);
+        return cartIds;
+    }
+}
@@ -0,0 +1,333 @@
+package com.example.marketplace.inventory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.example.marketplace.cache.ProductCache;
+import com.example.marketplace.entity.HotSkuAllotment;
+import com.example.marketplace.repository.HotSkuAllotmentRepository;
+import com.example.marketplace.repository.ProductRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HotSkuInventoryTest {
+
+    private final UUID hotId = UUID.randomUUID();
+    private final AtomicInteger row = new AtomicInteger();
+    private final List<HotSkuAllotment> allotments = new CopyOnWriteArrayList<>();
+
+    private ProductRepository productRepository;
+    private HotSkuAllotmentRepository allotmentRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private HotSkuInventory inventory;
+
+    @BeforeEach
+    void setUp() {
+        // The repository mock behaves like the conditional UPDATEs on a single products row
+        productRepository = mock(ProductRepository.class);
+        lenient().when(productRepository.decrementStock(eq(hotId), anyInt())).thenAnswer(invocation -> {
+            int quantity = invocation.getArgument(1);
+            int current;
+            do {
+                current = row.get();
+                if (current < quantity) {
+                    return 0;
+                }
+            } while (!row.compareAndSet(current, current - quantity));
+            return 1;
+        });
+        lenient().when(productRepository.incrementStock(eq(hotId), anyInt()))
+                .thenAnswer(invocation -> row.addAndGet(invocation.getArgument(1)) >= 0 ? 1 : 0);
+
+        // ... and this one like the hot_sku_allotments table
+        allotmentRepository = mock(HotSkuAllotmentRepository.class);
+        lenient().when(allotmentRepository.save(any(HotSkuAllotment.class))).thenAnswer(invocation -> {
+            allotments.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        lenient().doAnswer(invocation -> {
+            Map<UUID, Integer> units = invocation.getArgument(0);
+            units.forEach((productId, quantity) -> allotments.add(new HotSkuAllotment(null, productId, quantity)));
+            return null;
+        }).when(allotmentRepository).record(any());
+        lenient().when(allotmentRepository.findByProductId(any())).thenAnswer(invocation -> allotments.stream()
+                .filter(entry -> entry.getProductId().equals(invocation.getArgument(0)))
+                .toList());
+        lenient().when(allotmentRepository.findAll()).thenAnswer(invocation -> List.copyOf(allotments));
+        lenient().doAnswer(invocation -> {
+            Iterable<HotSkuAllotment> entries = invocation.getArgument(0);
+            entries.forEach(allotments::remove);
+            return null;
+        }).when(allotmentRepository).deleteAllInBatch(any());
+
+        meterRegistry = new SimpleMeterRegistry();
+        inventory = inventory(Set.of(hotId), Runnable::run);
+    }
+
+    // Refills run on the calling thread unless a test hands in its own executor
+    private HotSkuInventory inventory(Set<UUID> hotProductIds, Executor refiller) {
+        return new HotSkuInventory(productRepository, allotmentRepository, new ProductCache(100, Duration.ofMinutes(5), meterRegistry),
+                mock(PlatformTransactionManager.class), hotProductIds, 10, meterRegistry, refiller);
+    }
+
+    private boolean takeFromRow(int quantity) {
+        return productRepository.decrementStock(hotId, quantity) == 1;
+    }
+
+    private int recorded(UUID productId) {
+        return allotments.stream()
+                .filter(entry -> entry.getProductId().equals(productId))
+                .mapToInt(HotSkuAllotment::getUnits)
+                .sum();
+    }
+
+    @Test
+    void take_shouldLeaveTheFirstTakeToTheRow_andServeLaterTakesFromTheRefilledCounters() {
+        // Given
+        row.set(100);
+
+        // When
+        int first = inventory.take(hotId, 3);
+        int second = inventory.take(hotId, 2);
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isEqualTo(2);
+        assertThat(row.get()).isEqualTo(90);
+        assertThat(inventory.allotted(hotId)).isEqualTo(8);
+        verify(productRepository, times(1)).decrementStock(any(), anyInt());
+        assertThat(meterRegistry.get("marketplace.hot-skus.allotted").gauge().value()).isEqualTo(8.0);
+    }
+
+    @Test
+    void take_shouldNeverWaitForTheRefill_andQueueOnlyOneAtATime() {
+        // Given: a refiller that has not got round to its queue yet
+        List<Runnable> queued = new ArrayList<>();
+        inventory = inventory(Set.of(hotId), queued::add);
+        row.set(100);
+
+        // When
+        int first = inventory.take(hotId, 3);
+        int second = inventory.take(hotId, 3);
+
+        // Then
+        assertThat(first).isZero();
+        assertThat(second).isZero();
+        assertThat(queued).hasSize(1);
+        verify(productRepository, never()).decrementStock(any(), anyInt());
+        queued.get(0).run();
+        assertThat(inventory.allotted(hotId)).isEqualTo(10);
+        assertThat(inventory.take(hotId, 3)).isEqualTo(3);
+    }
+
+    @Test
+    void take_shouldClaimWhatTheRowHasLeft_whenItHasLessThanAnAllotment() {
+        // Given
+        row.set(7);
+
+        // When
+        inventory.take(hotId, 1);
+
+        // Then
+        assertThat(row.get()).isZero();
+        assertThat(inventory.allotted(hotId)).isEqualTo(7);
+    }
+
+    @Test
+    void take_shouldTakeOnlyWhatMemoryHas() {
+        // Given
+        row.set(12);
+        inventory.take(hotId, 1);
+
+        // When
+        int taken = inventory.take(hotId, 12);
+
+        // Then
+        assertThat(taken).isEqualTo(10);
+        assertThat(row.get() + inventory.allotted(hotId)).isEqualTo(2);
+    }
+
+    @Test
+    void giveBack_shouldMakeUnitsAvailableAgain() {
+        // Given
+        row.set(10);
+        inventory.take(hotId, 1);
+        inventory.take(hotId, 10);
+
+        // When
+        inventory.giveBack(hotId, 4);
+
+        // Then
+        assertThat(inventory.take(hotId, 4)).isEqualTo(4);
+        assertThat(inventory.take(hotId, 1)).isZero();
+    }
+
+    @Test
+    void returnAllotments_shouldMoveUnsoldUnitsBackToTheRow() {
+        // Given
+        row.set(100);
+        inventory.take(hotId, 3);
+        inventory.take(hotId, 3);
+
+        // When
+        inventory.returnAllotments();
+
+        // Then
+        assertThat(row.get()).isEqualTo(97);
+        assertThat(inventory.allotted(hotId)).isZero();
+        inventory.returnAllotments();
+        verify(productRepository, times(1)).incrementStock(any(), anyInt());
+    }
+
+    @Test
+    void flushAllotments_shouldKeepTheAllotmentWhileTheProductSells_andReturnItOnceItGoesQuiet() {
+        // Given
+        row.set(100);
+        inventory.take(hotId, 1);
+        inventory.take(hotId, 3);
+        inventory.recordSold(Map.of(hotId, 3));
+
+        // When
+        inventory.flushAllotments();
+
+        // Then: sold since the last flush, so nothing is drained but the sale is folded in
+        assertThat(row.get()).isEqualTo(90);
+        assertThat(inventory.allotted(hotId)).isEqualTo(7);
+        assertThat(allotments).hasSize(1);
+        assertThat(recorded(hotId)).isEqualTo(7);
+        verify(productRepository, never()).incrementStock(any(), anyInt());
+        inventory.flushAllotments();
+        assertThat(row.get()).isEqualTo(97);
+        assertThat(inventory.allotted(hotId)).isZero();
+        assertThat(allotments).isEmpty();
+    }
+
+    @Test
+    void returnAllotments_shouldKeepFlushingOtherProducts_whenOneRowUpdateFails() {
+        // Given
+        UUID otherId = UUID.randomUUID();
+        AtomicInteger otherRow = new AtomicInteger(100);
+        when(productRepository.decrementStock(eq(otherId), anyInt()))
+                .thenAnswer(invocation -> otherRow.addAndGet(-invocation.<Integer>getArgument(1)) >= 0 ? 1 : 0);
+        when(productRepository.incrementStock(eq(otherId), anyInt()))
+                .thenAnswer(invocation -> otherRow.addAndGet(invocation.<Integer>getArgument(1)) >= 0 ? 1 : 0);
+        inventory = inventory(Set.of(hotId, otherId), Runnable::run);
+        row.set(100);
+        inventory.take(hotId, 3);
+        inventory.take(otherId, 3);
+        when(productRepository.incrementStock(eq(hotId), anyInt())).thenThrow(new QueryTimeoutException("timeout"));
+
+        // When
+        inventory.returnAllotments();
+
+        // Then
+        assertThat(otherRow.get()).isEqualTo(100);
+        assertThat(inventory.allotted(otherId)).isZero();
+        assertThat(inventory.allotted(hotId)).isEqualTo(10);
+    }
+
+    @Test
+    void allotments_shouldBeRecordedAsTheyAreClaimedAndSold_andFoldedAwayByTheFlush() {
+        // Given
+        row.set(100);
+        inventory.take(hotId, 1);
+        inventory.take(hotId, 4);
+
+        // When
+        inventory.recordSold(Map.of(hotId, 4));
+
+        // Then
+        assertThat(recorded(hotId)).isEqualTo(6).isEqualTo((int) inventory.allotted(hotId));
+        inventory.returnAllotments();
+        assertThat(row.get()).isEqualTo(96);
+        assertThat(allotments).isEmpty();
+    }
+
+    @Test
+    void recoverAllotments_shouldPutWhatMemoryHeldAtACrashBackOnTheRow() {
+        // Given: a run that claimed an allotment and sold 3 units from it, then died without flushing
+        row.set(100);
+        inventory.take(hotId, 1);
+        inventory.take(hotId, 3);
+        inventory.recordSold(Map.of(hotId, 3));
+
+        // When
+        inventory(Set.of(hotId), Runnable::run).recoverAllotments();
+
+        // Then
+        assertThat(row.get()).isEqualTo(97);
+        assertThat(allotments).isEmpty();
+    }
+
+    @Test
+    void isHot_shouldOnlyMatchConfiguredProducts() {
+        assertThat(inventory.isHot(hotId)).isTrue();
+        assertThat(inventory.isHot(UUID.randomUUID())).isFalse();
+        verify(productRepository, never()).decrementStock(any(), anyInt());
+    }
+
+    @Test
+    void take_shouldNeverSellMoreThanTheRowHeld_underConcurrentTakes() throws Exception {
+        // Given: 16 threads race for 1,000 units while allotments are flushed back in between. What memory cannot
+        // cover comes from the row, as a checkout does
+        row.set(1_000);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        AtomicInteger sold = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int t = 0; t < 16; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    int quantity = 1 + i % 3;
+                    int fromMemory = inventory.take(hotId, quantity);
+                    if (fromMemory == quantity || takeFromRow(quantity - fromMemory)) {
+                        sold.addAndGet(quantity);
+                    } else {
+                        inventory.giveBack(hotId, fromMemory);
+                    }
+                    if (i % 50 == 0) {
+                        inventory.returnAllotments();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        assertThat(sold.get() + row.get() + inventory.allotted(hotId)).isEqualTo(1_000);
+        assertThat(sold.get()).isGreaterThan(990);
+        assertThat(row.get()).isNotNegative();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.marketplace.money;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class MoneyTest {
+
+    @Test
+    void lineTotal_shouldBeExact_whereDoubleArithmeticDrifts() {
+        // 0.1 * 3 is 0.30000000000000004 in double; in minor units it stays exact
+        assertEquals(30, Money.lineTotal(10, 3));
+
+        long total = 0;
+        for (int i = 0; i < 1000; i++) {
+            total = Money.add(total, Money.lineTotal(7525, 3));
+        }
+        assertEquals(22_575_000, total);
+    }
+
+    @Test
+    void arithmetic_shouldThrow_insteadOfWrappingOnOverflow() {
+        assertThrows(ArithmeticException.class, () -> Money.lineTotal(Long.MAX_VALUE / 2, 3));
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.marketplace.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.example.marketplace.order.MappedJournal.Entry;
+import com.example.marketplace.order.MappedJournal.Position;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void read_shouldReturnAppendedRecordsInOrder_andStopAtTheEnd() throws IOException {
+        // Given
+        try (MappedJournal journal = new MappedJournal(directory, 4096)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+
+            // When
+            List<Entry> entries = journal.read(journal.checkpoint(), 10);
+
+            // Then
+            assertThat(entries).extracting(entry -> text(entry.payload())).containsExactly("first", "second");
+            assertThat(journal.read(entries.get(1).next(), 10)).isEmpty();
+            assertThat(journal.read(journal.checkpoint(), 1)).hasSize(1);
+        }
+    }
+
+    @Test
+    void append_shouldRollToNewSegment_whenRecordDoesNotFit() throws IOException {
+        // Given: room for two 23-byte records per segment
+        try (MappedJournal journal = new MappedJournal(directory, 48)) {
+            // When
+            for (int i = 0; i < 5; i++) {
+                journal.append(bytes("record-" + i + "-pad-xx"));
+            }
+
+            // Then
+            assertThat(segmentFiles()).hasSize(3);
+            assertThat(journal.read(journal.checkpoint(), 10)).extracting(entry -> text(entry.payload()))
+                .containsExactly("record-0-pad-xx", "record-1-pad-xx", "record-2-pad-xx", "record-3-pad-xx",
+                    "record-4-pad-xx");
+        }
+    }
+
+    @Test
+    void reopen_shouldContinueAfterLastRecord_fromCheckpoint() throws IOException {
+        // Given
+        Position afterFirst;
+        try (MappedJournal journal = new MappedJournal(directory, 4096)) {
+            afterFirst = journal.append(bytes("projected"));
+            journal.append(bytes("pending"));
+            journal.checkpoint(afterFirst);
+        }
+
+        // When
+        try (MappedJournal reopened = new MappedJournal(directory, 4096)) {
+            reopened.append(bytes("new"));
+
+            // Then
+            assertThat(reopened.checkpoint()).isEqualTo(afterFirst);
+            assertThat(reopened.read(reopened.checkpoint(), 10)).extracting(entry -> text(entry.payload()))
+                .containsExactly("pending", "new");
+        }
+    }
+
+    @Test
+    void reopen_shouldDropTornRecord_atTheEnd() throws IOException {
+        // Given: a record whose length made it to the file but whose payload did not match its checksum
+        Position end;
+        try (MappedJournal journal = new MappedJournal(directory, 4096)) {
+            end = journal.append(bytes("intact"));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segmentFiles().get(0).toFile(), "rw")) {
+            file.seek(end.offset());
+            file.writeInt(12);
+            file.writeInt(0xDEAD);
+            file.write(bytes("half-written"));
+        }
+
+        // When
+        try (MappedJournal reopened = new MappedJournal(directory, 4096)) {
+            reopened.append(bytes("after"));
+
+            // Then
+            assertThat(reopened.read(reopened.checkpoint(), 10)).extracting(entry -> text(entry.payload()))
+                .containsExactly("intact", "after");
+        }
+    }
+
+    @Test
+    void checkpoint_shouldDeleteSegmentsWhollyBeforeIt() throws IOException {
+        // Given
+        try (MappedJournal journal = new MappedJournal(directory, 48)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(bytes("record-" + i + "-pad-xx"));
+            }
+            List<Entry> entries = journal.read(journal.checkpoint(), 10);
+
+            // When
+            journal.checkpoint(entries.get(3).next());
+
+            // Then
+            assertThat(segmentFiles()).hasSize(2);
+            assertThat(journal.read(journal.checkpoint(), 10)).extracting(entry -> text(entry.payload()))
+                .containsExactly("record-4-pad-xx");
+        }
+    }
+
+    @Test
+    void append_shouldRejectRecordLargerThanSegment() throws IOException {
+        try (MappedJournal journal = new MappedJournal(directory, 48)) {
+            assertThatThrownBy(() -> journal.append(new byte[41])).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
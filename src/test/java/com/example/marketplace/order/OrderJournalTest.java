@@ -0,0 +1,147 @@
+package com.example.marketplace.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import com.example.marketplace.order.OrderJournal.JournaledOrder;
+import com.example.marketplace.order.OrderJournal.Outcome;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+class OrderJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private OrderJournal orderJournal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        orderJournal = open();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        orderJournal.close();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void append_shouldRoundTripOrderThroughTheJournal() {
+        // Given
+        PlacedOrder order = order();
+
+        // When
+        orderJournal.append(order);
+        List<JournaledOrder> unprojected = orderJournal.readUnprojected(10);
+
+        // Then
+        assertThat(unprojected).extracting(JournaledOrder::order).containsExactly(order);
+    }
+
+    @Test
+    void appendOnCommit_shouldAppendJustBeforeTheCommit_andReportPendingUntilItCompletes() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        PlacedOrder order = order();
+
+        // When
+        orderJournal.appendOnCommit(order);
+
+        // Then
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.beforeCommit(false));
+        assertThat(orderJournal.readUnprojected(10)).extracting(JournaledOrder::order, JournaledOrder::outcome)
+            .containsExactly(tuple(order, Outcome.PENDING));
+        complete(TransactionSynchronization.STATUS_COMMITTED);
+        assertThat(orderJournal.readUnprojected(10)).extracting(JournaledOrder::outcome).containsExactly(Outcome.COMMITTED);
+    }
+
+    @Test
+    void appendOnCommit_shouldMarkOrderRolledBack_whenTheCommitFails() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        orderJournal.appendOnCommit(order());
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization -> synchronization.beforeCommit(false));
+
+        // When
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Then
+        assertThat(orderJournal.readUnprojected(10)).extracting(JournaledOrder::outcome).containsExactly(Outcome.ROLLED_BACK);
+    }
+
+    @Test
+    void appendOnCommit_shouldAppendNothing_whenTransactionRollsBackBeforeItsCommit() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        orderJournal.appendOnCommit(order());
+        complete(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        // Then
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+    }
+
+    @Test
+    void readUnprojected_shouldReportOrdersOfAnEarlierRunAsInDoubt() throws IOException {
+        // Given
+        orderJournal.append(order());
+        orderJournal.close();
+
+        // When
+        orderJournal = open();
+
+        // Then
+        assertThat(orderJournal.readUnprojected(10)).extracting(JournaledOrder::outcome).containsExactly(Outcome.IN_DOUBT);
+    }
+
+    @Test
+    void readUnprojected_shouldResumeAfterMarkedOrders_acrossRestarts() throws IOException {
+        // Given
+        PlacedOrder projected = order();
+        PlacedOrder pending = order();
+        orderJournal.append(projected);
+        orderJournal.append(pending);
+        orderJournal.markProjected(orderJournal.readUnprojected(1).get(0).next(), List.of(projected.id()));
+        orderJournal.close();
+
+        // When
+        orderJournal = open();
+
+        // Then
+        assertThat(orderJournal.readUnprojected(10)).extracting(JournaledOrder::order).containsExactly(pending);
+    }
+
+    private static void complete(int status) {
+        TransactionSynchronizationManager.getSynchronizations()
+            .forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+
+    private OrderJournal open() throws IOException {
+        return new OrderJournal(objectMapper, directory.toString(), DataSize.ofKilobytes(64), new SimpleMeterRegistry());
+    }
+
+    private static PlacedOrder order() {
+        UUID productId = UUID.randomUUID();
+        return new PlacedOrder(UUID.randomUUID(), UUID.randomUUID(), LocalDateTime.of(2025, 1, 2, 3, 4, 5), 2500,
+            List.of(new PlacedOrder.Line(productId, "Test Product", 1250, 2, 2500)));
+    }
+}
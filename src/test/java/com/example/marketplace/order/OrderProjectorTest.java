@@ -0,0 +1,177 @@
+package com.example.marketplace.order;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.Order;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.repository.OrderRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+@DataJpaTest
+class OrderProjectorTest {
+
+    @TempDir
+    Path directory;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private OrderJournal orderJournal;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        orderJournal.close();
+    }
+
+    @Test
+    void project_shouldSkipOrdersWhoseCommitFailed_andWaitForOnesStillCommitting() throws IOException {
+        // Given: an order whose commit failed, one that committed, one still committing, one that committed
+        orderJournal = openJournal();
+        PlacedOrder rolledBack = order();
+        PlacedOrder committed = order();
+        PlacedOrder committing = order();
+        PlacedOrder later = order();
+        appendOnCommit(rolledBack, TransactionSynchronization.STATUS_ROLLED_BACK);
+        appendOnCommit(committed, TransactionSynchronization.STATUS_COMMITTED);
+        List<TransactionSynchronization> stillCommitting = appendOnCommit(committing, null);
+        orderJournal.append(later);
+
+        // When
+        projector(10).project();
+
+        // Then
+        assertThat(orderRepository.findAllById(List.of(rolledBack.id(), committed.id(), committing.id(), later.id())))
+            .extracting(Order::getId).containsExactly(committed.id());
+        assertThat(orderJournal.readUnprojected(10)).extracting(journaled -> journaled.order().id())
+            .containsExactly(committing.id(), later.id());
+
+        // And once its commit completes, it and the ones behind it follow
+        stillCommitting.forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        projector(10).project();
+        assertThat(orderRepository.findAllById(List.of(committing.id(), later.id()))).hasSize(2);
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+    }
+
+    @Test
+    void project_shouldTakeInDoubtOrdersAsCommitted_onlyWhenTheirCartIsGone() throws IOException {
+        // Given: two orders from before a restart; one checkout never committed, so its cart is still there
+        orderJournal = openJournal();
+        Cart cart = new Cart();
+        cart.setSessionId("projector-" + UUID.randomUUID());
+        UUID remainingCartId = cartRepository.saveAndFlush(cart).getId();
+        PlacedOrder uncommitted = order(remainingCartId);
+        PlacedOrder committed = order();
+        orderJournal.append(uncommitted);
+        orderJournal.append(committed);
+        orderJournal.close();
+
+        // When
+        orderJournal = openJournal();
+        projector(10).project();
+
+        // Then
+        assertThat(orderRepository.findAllById(List.of(uncommitted.id(), committed.id())))
+            .extracting(Order::getId).containsExactly(committed.id());
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+    }
+
+    @Test
+    void project_shouldInsertJournaledOrders_inBatches_andMoveTheCheckpointPastThem() throws IOException {
+        // Given
+        orderJournal = openJournal();
+        List<PlacedOrder> placed = List.of(order(), order(), order());
+        placed.forEach(orderJournal::append);
+
+        // When
+        projector(2).project();
+
+        // Then
+        assertThat(orderRepository.findAllById(placed.stream().map(PlacedOrder::id).toList())).hasSize(3);
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+        Order stored = orderRepository.findWithLinesById(placed.get(0).id()).orElseThrow();
+        assertThat(stored.getTotal()).isEqualTo(2500);
+        assertThat(stored.getLines()).extracting("quantity").containsExactly(2);
+    }
+
+    @Test
+    void project_shouldReplayUnprojectedOrders_afterRestart_withoutDuplicatingStoredOnes() throws IOException {
+        // Given: orders stored but the checkpoint lost, as after a crash between the insert and the checkpoint
+        orderJournal = openJournal();
+        PlacedOrder first = order();
+        PlacedOrder second = order();
+        orderJournal.append(first);
+        orderJournal.append(second);
+        projector(10).project();
+        orderJournal.close();
+        Files.delete(directory.resolve("checkpoint"));
+
+        // When
+        orderJournal = openJournal();
+        projector(10).project();
+
+        // Then
+        assertThat(orderRepository.count()).isEqualTo(2);
+        assertThat(orderRepository.findAllById(List.of(first.id(), second.id()))).hasSize(2);
+        assertThat(orderJournal.readUnprojected(10)).isEmpty();
+    }
+
+    private OrderProjector projector(int batchSize) {
+        return new OrderProjector(orderJournal, orderRepository, cartRepository,
+                new TransactionTemplate(transactionManager), batchSize, new SimpleMeterRegistry());
+    }
+
+    // Plays the journal's part of a checkout transaction up to its commit and, unless status is null, to its end.
+    // The test's own transaction is active, so only the synchronization registered here is driven
+    private List<TransactionSynchronization> appendOnCommit(PlacedOrder order, Integer status) {
+        List<TransactionSynchronization> before = TransactionSynchronizationManager.getSynchronizations();
+        orderJournal.appendOnCommit(order);
+        List<TransactionSynchronization> registered = TransactionSynchronizationManager.getSynchronizations().stream()
+            .filter(synchronization -> !before.contains(synchronization))
+            .toList();
+        registered.forEach(synchronization -> synchronization.beforeCommit(false));
+        if (status != null) {
+            registered.forEach(synchronization -> synchronization.afterCompletion(status));
+        }
+        return registered;
+    }
+
+    private OrderJournal openJournal() throws IOException {
+        return new OrderJournal(objectMapper, directory.toString(), DataSize.ofKilobytes(64),
+                new SimpleMeterRegistry());
+    }
+
+    private static PlacedOrder order() {
+        return order(UUID.randomUUID());
+    }
+
+    private static PlacedOrder order(UUID cartId) {
+        return new PlacedOrder(UUID.randomUUID(), cartId, LocalDateTime.of(2025, 1, 2, 3, 4, 5), 2500,
+                List.of(new PlacedOrder.Line(UUID.randomUUID(), "Test Product", 1250, 2, 2500)));
+    }
+}
@@ -1,17 +1,21 @@
 package com.example.marketplace.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.example.marketplace.dto.CartLineView;
 import com.example.marketplace.entity.Cart;
 import com.example.marketplace.entity.CartItem;
 import com.example.marketplace.entity.Product;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
 
 @DataJpaTest
 class CartItemRepositoryTest {
@@ -32,10 +36,10 @@ class CartItemRepositoryTest {
         cart.setSessionId("test-session");
         entityManager.persist(cart);
 
-        product1 = new Product(null, "Product 1", 10.0, "Desc 1", 10);
+        product1 = new Product(null, "Product 1", 1000, "Desc 1", 10);
         entityManager.persist(product1);
 
-        product2 = new Product(null, "Product 2", 20.0, "Desc 2", 20);
+        product2 = new Product(null, "Product 2", 2000, "Desc 2", 20);
         entityManager.persist(product2);
 
         entityManager.flush();
@@ -92,21 +96,106 @@ class CartItemRepositoryTest {
     }
 
     @Test
-    void deleteByCart_shouldRemoveAllItemsForThatCart() {
+    void deleteAllByCartId_shouldRemoveAllItemsForThatCart() {
         // Given
         CartItem item1 = new CartItem();
         item1.setCart(cart);
         item1.setProduct(product1);
         item1.setQuantity(1);
-        entityManager.persistAndFlush(item1);
+        entityManager.persist(item1);
+        entityManager.persist(new CartItem(null, product2, 2, cart));
+        Cart otherCart = new Cart();
+        otherCart.setSessionId("other-session");
+        entityManager.persist(otherCart);
+        entityManager.persist(new CartItem(null, product1, 1, otherCart));
+        entityManager.flush();
 
         // When
-        cartItemRepository.deleteByCart(cart);
+        int deleted = cartItemRepository.deleteAllByCartId(cart.getId());
+
+        // Then
+        assertThat(deleted).isEqualTo(2);
+        assertThat(cartItemRepository.findByCart(cart)).isEmpty();
+        assertThat(cartItemRepository.findByCart(otherCart)).hasSize(1);
+    }
+
+    @Test
+    void findLineViewsByCartId_shouldProjectLinesWithTotals_inProductNameOrder() {
+        // Given
+        entityManager.persist(new CartItem(null, product2, 2, cart));
+        entityManager.persist(new CartItem(null, product1, 3, cart));
         entityManager.flush();
-        entityManager.clear(); // Clear persistence context to ensure we hit the DB
+        entityManager.clear();
+
+        // When
+        List<CartLineView> lines = cartItemRepository.findLineViewsByCartId(cart.getId());
 
         // Then
-        List<CartItem> items = cartItemRepository.findByCart(cart);
-        assertThat(items).isEmpty();
+        assertThat(lines).extracting(CartLineView::getProductName).containsExactly("Product 1", "Product 2");
+        assertThat(lines).extracting(CartLineView::getLineTotal).containsExactly(3000L, 4000L);
+        assertThat(lines.get(0).getProductId()).isEqualTo(product1.getId());
+        assertThat(lines.get(0).getUnitPrice()).isEqualTo(1000);
+        assertThat(cartItemRepository.findLineViewsByCartId(UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    void upsertQuantity_shouldInsertLine_whenNotInCart() {
+        int updated = cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 4, 0);
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(cartItemRepository.findByCartAndProduct(cart, product1))
+            .get().extracting(CartItem::getQuantity).isEqualTo(4);
+    }
+
+    @Test
+    void upsertQuantity_shouldIncrementExistingLine() {
+        cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 4, 0);
+        int updated = cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 6, 0);
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(cartItemRepository.findByCart(cart)).singleElement()
+            .extracting(CartItem::getQuantity).isEqualTo(10);
+    }
+
+    @Test
+    void upsertQuantity_shouldWriteNothing_whenQuantityWouldExceedStock() {
+        cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 8, 0);
+
+        assertThat(cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 3, 0)).isZero();
+        assertThat(cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product2.getId(), 21, 0)).isZero();
+        assertThat(cartItemRepository.findByCart(cart)).singleElement()
+            .extracting(CartItem::getQuantity).isEqualTo(8);
+    }
+
+    @Test
+    void upsertQuantity_shouldCountAllottedUnitsAsStock() {
+        int updated = cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 14, 5);
+
+        assertThat(updated).isEqualTo(1);
+        assertThat(cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), product1.getId(), 2, 5)).isZero();
+        assertThat(cartItemRepository.findByCart(cart)).singleElement()
+            .extracting(CartItem::getQuantity).isEqualTo(14);
+    }
+
+    @Test
+    void upsertQuantity_shouldWriteNothing_whenProductDoesNotExist() {
+        assertThat(cartItemRepository.upsertQuantity(UUID.randomUUID(), cart.getId(), UUID.randomUUID(), 1, 0)).isZero();
+        assertThat(cartItemRepository.findByCart(cart)).isEmpty();
+    }
+
+    @Test
+    void upsertQuantity_shouldFail_whenCartDoesNotExist() {
+        assertThatThrownBy(() ->
+            cartItemRepository.upsertQuantity(UUID.randomUUID(), UUID.randomUUID(), product1.getId(), 1, 0))
+            .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void saveAndFlush_shouldRejectSecondLineForSameProduct() {
+        CartItem item1 = new CartItem(null, product1, 1, cart);
+        entityManager.persistAndFlush(item1);
+
+        assertThatThrownBy(() -> cartItemRepository.saveAndFlush(new CartItem(null, product1, 1, cart)))
+            .isInstanceOf(DataIntegrityViolationException.class);
     }
 }
@@ -1,15 +1,28 @@
 package com.example.marketplace.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.example.marketplace.dto.CartSessionRef;
+import com.example.marketplace.dto.CartSummary;
 import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.CartItem;
+import com.example.marketplace.entity.Product;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.dao.DataIntegrityViolationException;
 
-@DataJpaTest
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 class CartRepositoryTest {
 
     @Autowired
@@ -18,6 +31,9 @@ class CartRepositoryTest {
     @Autowired
     private CartRepository cartRepository;
 
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
     @Test
     void findBySessionId_shouldReturnCart_whenSessionIdExists() {
         // Given
@@ -33,6 +49,24 @@ class CartRepositoryTest {
         assertThat(foundCarts.get(0).getSessionId()).isEqualTo("test-session-123");
     }
 
+    @Test
+    void save_shouldAssignTimeOrderedIds() {
+        // Given
+        Cart first = new Cart();
+        first.setSessionId("first-session");
+        Cart second = new Cart();
+        second.setSessionId("second-session");
+
+        // When
+        entityManager.persist(first);
+        entityManager.persist(second);
+        entityManager.flush();
+
+        // Then
+        assertThat(first.getId().version()).isEqualTo(7);
+        assertThat(second.getId().toString()).isGreaterThan(first.getId().toString());
+    }
+
     @Test
     void findBySessionId_shouldReturnEmptyList_whenSessionIdDoesNotExist() {
         // When
@@ -41,4 +75,198 @@ class CartRepositoryTest {
         // Then
         assertThat(foundCarts).isEmpty();
     }
+
+    @Test
+    void findWithItemsAndProductsById_shouldLoadWholeCartInOneQuery() {
+        // Given
+        Cart cart = persistCartWithItems("graph-session", 3);
+        Statistics statistics = statistics();
+
+        // When
+        Optional<Cart> found = cartRepository.findWithItemsAndProductsById(cart.getId());
+        int pricedLines = (int) found.orElseThrow().getItems().stream()
+            .filter(item -> item.getProduct().getName() != null)
+            .count();
+
+        // Then
+        assertThat(pricedLines).isEqualTo(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void findIdBySessionId_shouldReturnIdWithoutLoadingCart() {
+        // Given
+        Cart cart = persistCartWithItems("id-session", 2);
+        Statistics statistics = statistics();
+
+        // When
+        Optional<UUID> found = cartRepository.findIdBySessionId("id-session");
+
+        // Then
+        assertThat(found).contains(cart.getId());
+        assertThat(cartRepository.findIdBySessionId("unknown-session")).isEmpty();
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void findSummaryById_shouldAggregateLinesInOneQuery_withoutLoadingEntities() {
+        // Given
+        Cart cart = new Cart();
+        cart.setSessionId("summary-session");
+        entityManager.persist(cart);
+        Product laptop = entityManager.persist(new Product(null, "Laptop", 1000, "Desc", 10));
+        Product cable = entityManager.persist(new Product(null, "Cable", 250, "Desc", 10));
+        entityManager.persist(new CartItem(null, laptop, 2, cart));
+        entityManager.persist(new CartItem(null, cable, 3, cart));
+        entityManager.flush();
+        entityManager.clear();
+        Statistics statistics = statistics();
+
+        // When
+        CartSummary summary = cartRepository.findSummaryById(cart.getId()).orElseThrow();
+
+        // Then
+        assertThat(summary.getCartId()).isEqualTo(cart.getId());
+        assertThat(summary.getLineCount()).isEqualTo(2);
+        assertThat(summary.getTotalQuantity()).isEqualTo(5);
+        assertThat(summary.getTotalPrice()).isEqualTo(2750);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+    }
+
+    @Test
+    void findSummaryById_shouldReturnZeros_forEmptyCart_andEmpty_forMissingCart() {
+        // Given
+        Cart cart = new Cart();
+        cart.setSessionId("empty-summary-session");
+        entityManager.persistAndFlush(cart);
+
+        // When
+        CartSummary summary = cartRepository.findSummaryById(cart.getId()).orElseThrow();
+
+        // Then
+        assertThat(summary.getLineCount()).isZero();
+        assertThat(summary.getTotalQuantity()).isZero();
+        assertThat(summary.getTotalPrice()).isZero();
+        assertThat(cartRepository.findSummaryById(UUID.randomUUID())).isEmpty();
+    }
+
+    @Test
+    void sessionId_shouldBeUnique() {
+        // Given
+        Cart cart = new Cart();
+        cart.setSessionId("dup-session");
+        entityManager.persistAndFlush(cart);
+        Cart duplicate = new Cart();
+        duplicate.setSessionId("dup-session");
+
+        // When & Then
+        assertThatThrownBy(() -> entityManager.persistAndFlush(duplicate))
+            .isInstanceOf(ConstraintViolationException.class);
+    }
+
+    @Test
+    void insertCart_shouldCreateCartFoundBySession() {
+        // Given
+        UUID id = UUID.randomUUID();
+
+        // When
+        int inserted = cartRepository.insertCart(id, "inserted-session", LocalDateTime.now());
+
+        // Then
+        assertThat(inserted).isEqualTo(1);
+        assertThat(cartRepository.findIdBySessionId("inserted-session")).contains(id);
+        assertThat(cartRepository.findWithItemsAndProductsById(id).orElseThrow().getItems()).isEmpty();
+    }
+
+    @Test
+    void insertCart_shouldFail_whenSessionAlreadyHasCart() {
+        // Given
+        cartRepository.insertCart(UUID.randomUUID(), "taken-session", LocalDateTime.now());
+
+        // When & Then
+        assertThatThrownBy(() -> cartRepository.insertCart(UUID.randomUUID(), "taken-session", LocalDateTime.now()))
+            .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void bulkDeletes_shouldRemoveLargeCartWithTwoStatements() {
+        // Given
+        Cart cart = persistCartWithItems("bulk-delete-session", 20);
+        Statistics statistics = statistics();
+
+        // When
+        int deletedLines = cartItemRepository.deleteAllByCartId(cart.getId());
+        int deletedCarts = cartRepository.deleteCartByIdAndVersion(cart.getId(), cart.getVersion());
+
+        // Then
+        assertThat(deletedLines).isEqualTo(20);
+        assertThat(deletedCarts).isEqualTo(1);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(cartRepository.findById(cart.getId())).isEmpty();
+    }
+
+    @Test
+    void touch_shouldBumpVersion_soDeleteAtTheOldVersionMatchesNothing() {
+        // Given
+        Cart cart = persistCartWithItems("versioned-session", 1);
+        long readVersion = cart.getVersion();
+
+        // When
+        cartRepository.touch(cart.getId(), LocalDateTime.now());
+        int staleDelete = cartRepository.deleteCartByIdAndVersion(cart.getId(), readVersion);
+
+        // Then
+        assertThat(staleDelete).isZero();
+        assertThat(cartRepository.findById(cart.getId())).get()
+            .extracting(Cart::getVersion).isEqualTo(readVersion + 1);
+    }
+
+    @Test
+    void idleCartQueries_shouldSelectLockAndDeleteOnlyCartsIdleBeforeCutoff() {
+        // Given
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(7);
+        Cart oldest = persistCartWithItems("oldest-session", 2);
+        Cart idle = persistCartWithItems("idle-session", 1);
+        Cart active = persistCartWithItems("active-session", 1);
+        cartRepository.touch(oldest.getId(), cutoff.minusDays(3));
+        cartRepository.touch(idle.getId(), cutoff.minusDays(1));
+
+        // When
+        List<CartSessionRef> selected = cartRepository.findIdleCarts(cutoff, Limit.of(10));
+        List<UUID> ids = selected.stream().map(CartSessionRef::getId).toList();
+        List<CartSessionRef> locked = cartRepository.lockIdleCarts(List.of(oldest.getId(), active.getId()), cutoff);
+        List<UUID> lockedIds = locked.stream().map(CartSessionRef::getId).toList();
+        int deletedLines = cartItemRepository.deleteAllByCartIdIn(lockedIds);
+        cartRepository.deleteAllByIdInBatch(lockedIds);
+
+        // Then
+        assertThat(selected).extracting(CartSessionRef::getSessionId).containsExactly("oldest-session", "idle-session");
+        assertThat(ids).doesNotContain(active.getId());
+        assertThat(lockedIds).containsExactly(oldest.getId());
+        assertThat(deletedLines).isEqualTo(2);
+        assertThat(cartRepository.findById(oldest.getId())).isEmpty();
+        assertThat(cartRepository.findById(active.getId())).isPresent();
+    }
+
+    private Cart persistCartWithItems(String sessionId, int lines) {
+        Cart cart = new Cart();
+        cart.setSessionId(sessionId);
+        entityManager.persist(cart);
+        for (int i = 0; i < lines; i++) {
+            Product product = entityManager.persist(new Product(null, "Product " + i, 1000, "Desc", 10));
+            entityManager.persist(new CartItem(null, product, 1, cart));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return cart;
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory()
+            .unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.marketplace.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.marketplace.entity.HotSkuAllotment;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+@DataJpaTest
+class HotSkuAllotmentRepositoryTest {
+
+    @Autowired
+    private HotSkuAllotmentRepository hotSkuAllotmentRepository;
+
+    @Test
+    void record_shouldInsertOneEntryPerProduct_readableByProductId() {
+        // Given
+        UUID productId = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+
+        // When
+        hotSkuAllotmentRepository.record(Map.of(productId, 20, otherId, 5));
+        hotSkuAllotmentRepository.record(Map.of(productId, -3));
+
+        // Then
+        assertThat(hotSkuAllotmentRepository.findByProductId(productId))
+                .extracting(HotSkuAllotment::getUnits)
+                .containsExactlyInAnyOrder(20, -3);
+        assertThat(hotSkuAllotmentRepository.findByProductId(otherId))
+                .extracting(HotSkuAllotment::getUnits)
+                .containsExactly(5);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.marketplace.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.marketplace.entity.Order;
+import com.example.marketplace.entity.OrderLine;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+@DataJpaTest
+class OrderRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Test
+    void save_shouldStoreOrderWithItsLines_underTheAssignedId() {
+        // Given
+        UUID orderId = UUID.randomUUID();
+        Order order = order(orderId);
+
+        // When
+        orderRepository.saveAndFlush(order);
+        entityManager.clear();
+
+        // Then
+        Order found = orderRepository.findWithLinesById(orderId).orElseThrow();
+        assertThat(found.getTotal()).isEqualTo(3000);
+        assertThat(found.getLines()).hasSize(1);
+        assertThat(found.getLines().get(0).getProductName()).isEqualTo("Test Product");
+        assertThat(found.getLines().get(0).getId()).isNotNull();
+    }
+
+    @Test
+    void findExistingIds_shouldReturnOnlyStoredIds() {
+        // Given
+        UUID stored = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        orderRepository.saveAndFlush(order(stored));
+
+        // When
+        var existing = orderRepository.findExistingIds(List.of(stored, missing));
+
+        // Then
+        assertThat(existing).containsExactly(stored);
+    }
+
+    private static Order order(UUID id) {
+        Order order = new Order();
+        order.setId(id);
+        order.setCartId(UUID.randomUUID());
+        order.setPlacedAt(LocalDateTime.now());
+        order.setTotal(3000);
+        order.getLines().add(new OrderLine(null, order, UUID.randomUUID(), "Test Product", 1500, 2, 3000));
+        return order;
+    }
+}
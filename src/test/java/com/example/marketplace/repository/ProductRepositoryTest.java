@@ -1,15 +1,24 @@
 package com.example.marketplace.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.entity.Product;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 @DataJpaTest
 class ProductRepositoryTest {
@@ -23,7 +32,7 @@ class ProductRepositoryTest {
     @Test
     void save_shouldPersistProduct() {
         // Given
-        Product product = new Product(null, "Test Keyboard", 120.00, "A mechanical keyboard", 50);
+        Product product = new Product(null, "Test Keyboard", 12000, "A mechanical keyboard", 50);
 
         // When
         Product savedProduct = productRepository.save(product);
@@ -38,7 +47,7 @@ class ProductRepositoryTest {
     @Test
     void findById_shouldReturnProduct_whenProductExists() {
         // Given
-        Product product = new Product(null, "Test Monitor", 300.00, "A 4K monitor", 20);
+        Product product = new Product(null, "Test Monitor", 30000, "A 4K monitor", 20);
         UUID id = entityManager.persistAndGetId(product, UUID.class);
         entityManager.flush();
 
@@ -62,7 +71,7 @@ class ProductRepositoryTest {
     @Test
     void delete_shouldRemoveProduct() {
         // Given
-        Product product = new Product(null, "To Be Deleted", 5.0, "Temp product", 5);
+        Product product = new Product(null, "To Be Deleted", 500, "Temp product", 5);
         UUID id = entityManager.persistAndGetId(product, UUID.class);
         entityManager.flush();
 
@@ -74,4 +83,114 @@ class ProductRepositoryTest {
         Product deletedProduct = entityManager.find(Product.class, id);
         assertThat(deletedProduct).isNull();
     }
+
+    @Test
+    void keysetQueries_shouldPageThroughAllProductsInIdOrder() {
+        // Given
+        for (int i = 0; i < 5; i++) {
+            entityManager.persist(new Product(null, "Product " + i, 1000, "Desc", 1));
+        }
+        entityManager.flush();
+
+        // When
+        List<ProductView> visited = new ArrayList<>();
+        List<ProductView> page = productRepository.findViewsOrderById(Limit.of(3));
+        while (!page.isEmpty()) {
+            visited.addAll(page);
+            page = productRepository.findViewsAfterOrderById(page.get(page.size() - 1).getId(), Limit.of(3));
+        }
+
+        // Then
+        assertThat(visited).hasSize((int) productRepository.count());
+        // H2 orders UUIDs as unsigned bytes, which matches their canonical string form
+        assertThat(visited).extracting(view -> view.getId().toString())
+            .doesNotHaveDuplicates()
+            .isSortedAccordingTo(Comparator.naturalOrder());
+    }
+
+    @Test
+    void findViewsByIdIn_shouldProjectRequestedProducts() {
+        // Given
+        Product product = entityManager.persist(new Product(null, "Projected", 1250, "Desc", 7));
+        entityManager.flush();
+
+        // When
+        List<ProductView> views = productRepository.findViewsByIdIn(List.of(product.getId(), UUID.randomUUID()));
+
+        // Then
+        assertThat(views).singleElement()
+            .isEqualTo(new ProductView(product.getId(), "Projected", 1250, "Desc", 7));
+    }
+
+    @Test
+    void decrementStock_shouldReduceStock_whenEnoughIsLeft() {
+        // Given
+        Product product = new Product(null, "Hot Item", 1000, "Flash sale", 3);
+        UUID id = entityManager.persistAndGetId(product, UUID.class);
+        entityManager.flush();
+
+        // When
+        int updated = productRepository.decrementStock(id, 3);
+        entityManager.clear();
+
+        // Then
+        assertThat(updated).isEqualTo(1);
+        assertThat(entityManager.find(Product.class, id).getStock()).isZero();
+    }
+
+    @Test
+    void decrementStock_shouldUpdateNothing_whenStockIsShortOrProductMissing() {
+        // Given
+        Product product = new Product(null, "Hot Item", 1000, "Flash sale", 2);
+        UUID id = entityManager.persistAndGetId(product, UUID.class);
+        entityManager.flush();
+
+        // When
+        int shortUpdate = productRepository.decrementStock(id, 3);
+        int missingUpdate = productRepository.decrementStock(UUID.randomUUID(), 1);
+        entityManager.clear();
+
+        // Then
+        assertThat(shortUpdate).isZero();
+        assertThat(missingUpdate).isZero();
+        assertThat(entityManager.find(Product.class, id).getStock()).isEqualTo(2);
+    }
+
+    @Test
+    void stockUpdates_shouldBumpVersion_soStaleCopiesCannotOverwriteThem() {
+        // Given
+        UUID id = entityManager.persistAndGetId(new Product(null, "Edited", 1000, "Desc", 10), UUID.class);
+        entityManager.flush();
+        entityManager.clear();
+        Product stale = productRepository.findById(id).orElseThrow();
+        entityManager.detach(stale);
+
+        // When
+        productRepository.decrementStock(id, 1);
+        productRepository.decrementStockInOrder(new TreeMap<>(Map.of(id, 1)));
+        entityManager.clear();
+        stale.setPrice(900);
+
+        // Then
+        assertThat(entityManager.find(Product.class, id).getVersion()).isEqualTo(stale.getVersion() + 2);
+        assertThatThrownBy(() -> productRepository.saveAndFlush(stale))
+            .isInstanceOf(ObjectOptimisticLockingFailureException.class);
+    }
+
+    @Test
+    void decrementStockInOrder_shouldReportLinesThatCouldNotBeDecremented() {
+        // Given
+        UUID plentyId = entityManager.persistAndGetId(new Product(null, "Plenty", 1000, "Desc", 10), UUID.class);
+        UUID scarceId = entityManager.persistAndGetId(new Product(null, "Scarce", 1000, "Desc", 1), UUID.class);
+        entityManager.flush();
+
+        // When
+        Set<UUID> shortIds = productRepository.decrementStockInOrder(new TreeMap<>(Map.of(plentyId, 4, scarceId, 2)));
+        entityManager.clear();
+
+        // Then
+        assertThat(shortIds).containsExactly(scarceId);
+        assertThat(entityManager.find(Product.class, plentyId).getStock()).isEqualTo(6);
+        assertThat(entityManager.find(Product.class, scarceId).getStock()).isEqualTo(1);
+    }
 }
@@ -0,0 +1,195 @@
+package com.example.marketplace.reservation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class StockReservationLedgerTest {
+
+    private MutableClock clock;
+    private StockReservationLedger ledger;
+    private UUID productId;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+        ledger = new StockReservationLedger(Duration.ofMinutes(15), clock);
+        productId = UUID.randomUUID();
+    }
+
+    @Test
+    void hold_shouldReduceAvailableStock_andRefuseWhatIsAlreadyHeld() {
+        // Given
+        UUID firstCart = UUID.randomUUID();
+        UUID secondCart = UUID.randomUUID();
+
+        // When
+        boolean first = ledger.hold(productId, firstCart, 10, 15);
+        boolean tooMany = ledger.hold(productId, secondCart, 6, 15);
+        boolean rest = ledger.hold(productId, secondCart, 5, 15);
+
+        // Then
+        assertThat(first).isTrue();
+        assertThat(tooMany).isFalse();
+        assertThat(rest).isTrue();
+        assertThat(ledger.available(productId, 15)).isZero();
+    }
+
+    @Test
+    void hold_shouldAddToTheCartsExistingHold() {
+        // Given
+        UUID cartId = UUID.randomUUID();
+        ledger.hold(productId, cartId, 2, 5);
+
+        // When
+        boolean more = ledger.hold(productId, cartId, 3, 5);
+        boolean beyond = ledger.hold(productId, cartId, 1, 5);
+
+        // Then
+        assertThat(more).isTrue();
+        assertThat(beyond).isFalse();
+        assertThat(ledger.held(productId)).isEqualTo(5);
+    }
+
+    @Test
+    void holds_shouldExpireAfterTtl_andTopUpsShouldRestartTheTimer() {
+        // Given
+        UUID idleCart = UUID.randomUUID();
+        UUID activeCart = UUID.randomUUID();
+        ledger.hold(productId, idleCart, 4, 10);
+        ledger.hold(productId, activeCart, 3, 10);
+
+        // When
+        clock.advance(Duration.ofMinutes(10));
+        ledger.hold(productId, activeCart, 1, 10);
+        clock.advance(Duration.ofMinutes(6));
+
+        // Then: the idle cart's hold lapsed; the topped-up one still holds all 4
+        assertThat(ledger.held(productId)).isEqualTo(4);
+        clock.advance(Duration.ofMinutes(10));
+        assertThat(ledger.held(productId)).isZero();
+    }
+
+    @Test
+    void unhold_shouldGiveBackOnlyTheGivenQuantity() {
+        // Given
+        UUID cartId = UUID.randomUUID();
+        ledger.hold(productId, cartId, 5, 10);
+
+        // When
+        ledger.unhold(productId, cartId, 2);
+
+        // Then
+        assertThat(ledger.held(productId)).isEqualTo(3);
+        ledger.unhold(productId, cartId, 5);
+        assertThat(ledger.held(productId)).isZero();
+    }
+
+    @Test
+    void releaseCart_shouldDropItsHoldsOnEveryProduct_andKeepOtherCarts() {
+        // Given
+        UUID cartId = UUID.randomUUID();
+        UUID otherCart = UUID.randomUUID();
+        UUID otherProduct = UUID.randomUUID();
+        ledger.hold(productId, cartId, 2, 10);
+        ledger.hold(otherProduct, cartId, 1, 10);
+        ledger.hold(productId, otherCart, 3, 10);
+
+        // When
+        ledger.releaseCart(cartId);
+
+        // Then
+        assertThat(ledger.held(productId)).isEqualTo(3);
+        assertThat(ledger.held(otherProduct)).isZero();
+    }
+
+    @Test
+    void cartIndex_shouldOnlyTrackCartsThatStillHoldSomething() {
+        // Given
+        UUID refusedCart = UUID.randomUUID();
+        UUID unheldCart = UUID.randomUUID();
+        UUID expiredCart = UUID.randomUUID();
+
+        // When
+        ledger.hold(productId, refusedCart, 11, 10);
+        ledger.hold(productId, unheldCart, 2, 10);
+        ledger.unhold(productId, unheldCart, 2);
+        ledger.hold(productId, expiredCart, 1, 10);
+        clock.advance(Duration.ofMinutes(16));
+        ledger.held(productId);
+
+        // Then
+        assertThat(ledger.holdsFor(refusedCart)).isFalse();
+        assertThat(ledger.holdsFor(unheldCart)).isFalse();
+        assertThat(ledger.holdsFor(expiredCart)).isFalse();
+    }
+
+    @Test
+    void hold_shouldNeverOversell_underConcurrentAdds() throws Exception {
+        // Given: 200 carts race for the last 15 units
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        // When
+        for (int i = 0; i < 200; i++) {
+            futures.add(executor.submit(() -> {
+                if (ledger.hold(productId, UUID.randomUUID(), 1, 15)) {
+                    granted.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        // Then
+        assertThat(granted.get()).isEqualTo(15);
+        assertThat(ledger.available(productId, 15)).isZero();
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
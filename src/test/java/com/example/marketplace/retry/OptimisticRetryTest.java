@@ -0,0 +1,87 @@
+package com.example.marketplace.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import com.example.marketplace.entity.Cart;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class OptimisticRetryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private OptimisticRetry retry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        retry = new OptimisticRetry(3, Duration.ofMillis(1), Duration.ofMillis(2), meterRegistry);
+    }
+
+    @Test
+    void run_shouldRetryConflicts_untilAnAttemptSucceeds() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When
+        String result = retry.run("checkout", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new ObjectOptimisticLockingFailureException(Cart.class, "cart");
+            }
+            return "done";
+        });
+
+        // Then
+        assertThat(result).isEqualTo("done");
+        assertThat(count("marketplace.optimistic.attempts", "checkout")).isEqualTo(3);
+        assertThat(count("marketplace.optimistic.conflicts", "checkout")).isEqualTo(2);
+        assertThat(meterRegistry.find("marketplace.optimistic.exhausted").counter()).isNull();
+    }
+
+    @Test
+    void run_shouldRethrowLastConflict_whenEveryAttemptLoses() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When & Then
+        assertThatThrownBy(() -> retry.run("add-to-cart", () -> {
+            calls.incrementAndGet();
+            throw new ObjectOptimisticLockingFailureException(Cart.class, "cart");
+        })).isInstanceOf(ObjectOptimisticLockingFailureException.class);
+        assertThat(calls.get()).isEqualTo(3);
+        assertThat(count("marketplace.optimistic.conflicts", "add-to-cart")).isEqualTo(3);
+        assertThat(count("marketplace.optimistic.exhausted", "add-to-cart")).isEqualTo(1);
+    }
+
+    @Test
+    void run_shouldNotRetryOtherFailures() {
+        // Given
+        AtomicInteger calls = new AtomicInteger();
+
+        // When & Then
+        assertThatThrownBy(() -> retry.run("checkout", () -> {
+            calls.incrementAndGet();
+            throw new DataIntegrityViolationException("fk");
+        })).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(meterRegistry.find("marketplace.optimistic.conflicts").counter()).isNull();
+    }
+
+    @Test
+    void constructor_shouldRejectFewerThanOneAttempt() {
+        assertThatThrownBy(() -> new OptimisticRetry(0, Duration.ZERO, Duration.ZERO, meterRegistry))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private double count(String name, String operation) {
+        return meterRegistry.get(name).tag("operation", operation).counter().count();
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.marketplace.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class NgramTokenizerTest {
+
+    @Test
+    void indexTerms_shouldEmitUnigramsAndBigramsWithCounts() {
+        Map<String, Integer> terms = NgramTokenizer.indexTerms("ノートパソコン");
+
+        assertThat(terms).containsKeys("ノ", "ン", "ノー", "ート", "トパ", "パソ", "ソコ", "コン");
+        assertThat(terms.get("ン")).isEqualTo(1);
+    }
+
+    @Test
+    void indexTerms_shouldSplitOnPunctuationAndCountRepeats() {
+        Map<String, Integer> terms = NgramTokenizer.indexTerms("Mouse, mouse!");
+
+        assertThat(terms.get("mo")).isEqualTo(2);
+        assertThat(terms).doesNotContainKey("e,");
+        assertThat(terms).doesNotContainKey("em");
+    }
+
+    @Test
+    void queryTerms_shouldNormalizeWidthAndCase() {
+        assertThat(NgramTokenizer.queryTerms("ＰＣ")).containsExactly("pc");
+        assertThat(NgramTokenizer.queryTerms("ﾉｰﾄ")).containsExactly("ノー", "ート");
+    }
+
+    @Test
+    void queryTerms_shouldFallBackToUnigramForSingleCharacter() {
+        assertThat(NgramTokenizer.queryTerms("鍵")).containsExactly("鍵");
+    }
+
+    @Test
+    void queryTerms_shouldBeEmpty_forBlankOrPunctuationOnlyInput() {
+        assertThat(NgramTokenizer.queryTerms("   ")).isEmpty();
+        assertThat(NgramTokenizer.queryTerms("・、。")).isEmpty();
+        assertThat(NgramTokenizer.queryTerms(null)).isEmpty();
+    }
+}
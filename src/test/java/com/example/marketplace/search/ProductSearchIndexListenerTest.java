@@ -0,0 +1,73 @@
+package com.example.marketplace.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.example.marketplace.entity.Product;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class ProductSearchIndexListenerTest {
+
+    private ProductSearchIndex index;
+    private ProductSearchIndexListener listener;
+    private Product product;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("productSearchIndex", index);
+        listener = new ProductSearchIndexListener(beanFactory.getBeanProvider(ProductSearchIndex.class));
+        product = new Product(UUID.randomUUID(), "ゲーミングマウス", 7525, "高精度マウス", 40);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void onSave_shouldIndexImmediately_whenNoTransactionIsActive() {
+        listener.onSave(product);
+
+        assertThat(index.search("マウス", 10)).containsExactly(product.getId());
+    }
+
+    @Test
+    void onSave_shouldIndexOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        listener.onSave(product);
+        assertThat(index.search("マウス", 10)).isEmpty();
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertThat(index.search("マウス", 10)).containsExactly(product.getId());
+    }
+
+    @Test
+    void onRemove_shouldRemoveFromIndex() {
+        listener.onSave(product);
+
+        listener.onRemove(product);
+
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void listener_shouldBeNoOp_whenIndexIsUnavailable() {
+        ProductSearchIndexListener detached =
+                new ProductSearchIndexListener(new StaticListableBeanFactory().getBeanProvider(ProductSearchIndex.class));
+
+        detached.onSave(product);
+        detached.onRemove(product);
+
+        assertThat(index.size()).isZero();
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.marketplace.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+    private UUID laptop;
+    private UUID phone;
+    private UUID keyboard;
+
+    @BeforeEach
+    void setUp() {
+        index = new ProductSearchIndex();
+        laptop = UUID.randomUUID();
+        phone = UUID.randomUUID();
+        keyboard = UUID.randomUUID();
+        index.index(laptop, "ノートパソコン", "高性能16インチノートパソコン、高解像度ディスプレイ搭載。");
+        index.index(phone, "スマートフォン", "最新モデルのスマートフォン、先進的なカメラシステムと長寿命バッテリーを搭載。");
+        index.index(keyboard, "メカニカルキーボード", "ノートパソコンにも使える高耐久性メカニカルキーボード。");
+    }
+
+    @Test
+    void search_shouldMatchPartialJapaneseQuery() {
+        assertThat(index.search("パソコン", 10)).containsExactly(laptop, keyboard);
+    }
+
+    @Test
+    void search_shouldRankNameMatchesAboveDescriptionMatches() {
+        assertThat(index.search("ノートパソコン", 10).get(0)).isEqualTo(laptop);
+        assertThat(index.search("キーボード", 10)).containsExactly(keyboard);
+    }
+
+    @Test
+    void search_shouldRequireEveryQueryTerm() {
+        assertThat(index.search("パソコン カメラ", 10)).isEmpty();
+        assertThat(index.search("搭載", 10)).containsExactlyInAnyOrder(laptop, phone);
+    }
+
+    @Test
+    void search_shouldHonourLimit() {
+        assertThat(index.search("搭載", 1)).hasSize(1);
+    }
+
+    @Test
+    void search_shouldReturnEmpty_whenTermIsUnknown() {
+        assertThat(index.search("冷蔵庫", 10)).isEmpty();
+        assertThat(index.search("、", 10)).isEmpty();
+    }
+
+    @Test
+    void index_shouldReplacePreviousTermsOnUpdate() {
+        index.index(laptop, "タブレット", "軽量タブレット");
+
+        assertThat(index.search("パソコン", 10)).containsExactly(keyboard);
+        assertThat(index.search("タブレット", 10)).containsExactly(laptop);
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void remove_shouldDropProductFromResults() {
+        index.remove(keyboard);
+
+        assertThat(index.search("パソコン", 10)).containsExactly(laptop);
+        assertThat(index.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.marketplace.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.CartSessionRef;
+import com.example.marketplace.repository.CartItemRepository;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class CartReaperTest {
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private CartItemRepository cartItemRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private SessionCartCache sessionCartCache;
+    private StockReservationLedger stockReservationLedger;
+    private SimpleMeterRegistry meterRegistry;
+    private CartReaper cartReaper;
+    private final LocalDateTime cutoff = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sessionCartCache = new SessionCartCache(100, Duration.ofMinutes(30), meterRegistry);
+        stockReservationLedger = new StockReservationLedger(Duration.ofMinutes(15));
+        cartReaper = new CartReaper(cartRepository, cartItemRepository, sessionCartCache, stockReservationLedger,
+                transactionTemplate, Duration.ofDays(7), 2, meterRegistry);
+    }
+
+    @Test
+    void reapCartsIdleSince_shouldDeleteInBatches_untilShortBatch() {
+        // Given
+        runTransactionsInline();
+        List<CartSessionRef> firstBatch = List.of(ref("s1"), ref("s2"));
+        List<CartSessionRef> lastBatch = List.of(ref("s3"));
+        UUID productId = UUID.randomUUID();
+        stockReservationLedger.hold(productId, lastBatch.get(0).getId(), 2, 10);
+        when(cartRepository.findIdleCarts(cutoff, Limit.of(2))).thenReturn(firstBatch, lastBatch);
+        when(cartRepository.lockIdleCarts(any(), eq(cutoff))).thenReturn(firstBatch, lastBatch);
+        when(cartItemRepository.deleteAllByCartIdIn(any())).thenReturn(5, 1);
+        sessionCartCache.put("s1", firstBatch.get(0).getId());
+
+        // When
+        int reaped = cartReaper.reapCartsIdleSince(cutoff);
+
+        // Then
+        assertEquals(3, reaped);
+        verify(cartRepository, times(2)).findIdleCarts(cutoff, Limit.of(2));
+        verify(cartRepository).lockIdleCarts(List.of(firstBatch.get(0).getId(), firstBatch.get(1).getId()), cutoff);
+        verify(cartRepository).deleteAllByIdInBatch(List.of(firstBatch.get(0).getId(), firstBatch.get(1).getId()));
+        assertTrue(sessionCartCache.get("s1").isEmpty());
+        assertEquals(0, stockReservationLedger.held(productId));
+        assertEquals(3.0, meterRegistry.get("marketplace.cart.reaper.carts").counter().count());
+        assertEquals(6.0, meterRegistry.get("marketplace.cart.reaper.items").counter().count());
+    }
+
+    @Test
+    void reapCartsIdleSince_shouldQueryOnce_andWriteNothing_whenNoCartIsIdle() {
+        // Given
+        when(cartRepository.findIdleCarts(cutoff, Limit.of(2))).thenReturn(List.of());
+
+        // When
+        int reaped = cartReaper.reapCartsIdleSince(cutoff);
+
+        // Then
+        assertEquals(0, reaped);
+        verify(transactionTemplate, never()).execute(any());
+        assertEquals(0.0, meterRegistry.get("marketplace.cart.reaper.carts").counter().count());
+    }
+
+    @Test
+    void reapCartsIdleSince_shouldDeleteAndCleanUpOnlyCartsStillIdleWhenLocked() {
+        // Given: one of the two selected carts was touched before the batch locked it
+        runTransactionsInline();
+        CartSessionRef idle = ref("s1");
+        CartSessionRef touched = ref("s2");
+        UUID productId = UUID.randomUUID();
+        stockReservationLedger.hold(productId, touched.getId(), 2, 10);
+        sessionCartCache.put("s1", idle.getId());
+        sessionCartCache.put("s2", touched.getId());
+        when(cartRepository.findIdleCarts(cutoff, Limit.of(2))).thenReturn(List.of(idle, touched), List.of());
+        when(cartRepository.lockIdleCarts(List.of(idle.getId(), touched.getId()), cutoff)).thenReturn(List.of(idle));
+        when(cartItemRepository.deleteAllByCartIdIn(List.of(idle.getId()))).thenReturn(2);
+
+        // When
+        int reaped = cartReaper.reapCartsIdleSince(cutoff);
+
+        // Then
+        assertEquals(1, reaped);
+        verify(cartRepository).deleteAllByIdInBatch(List.of(idle.getId()));
+        assertTrue(sessionCartCache.get("s1").isEmpty());
+        assertEquals(Optional.of(touched.getId()), sessionCartCache.get("s2"));
+        assertEquals(2, stockReservationLedger.held(productId));
+        assertEquals(1.0, meterRegistry.get("marketplace.cart.reaper.carts").counter().count());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runTransactionsInline() {
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+    }
+
+    private CartSessionRef ref(String sessionId) {
+        return new CartSessionRef(UUID.randomUUID(), sessionId);
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.marketplace.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.CartItem;
+import com.example.marketplace.entity.Product;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.repository.ProductRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+// Runs the real service against H2 and counts the statements sent through the DataSource, whoever issues
+// them (Hibernate or JdbcTemplate): a whole cart is inserted in one JDBC batch and deleted with two bulk
+// statements, instead of one round trip per line. An executed batch counts once
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class CartServiceImplBatchingTest {
+
+    private static final int LINES = 50;
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private final List<UUID> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < LINES; i++) {
+            productIds.add(productRepository.save(new Product(null, "Batch " + i, 100, "Desc", 10)).getId());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        cartRepository.deleteAll(cartRepository.findBySessionId("batching-session"));
+        productRepository.deleteAllById(productIds);
+    }
+
+    @Test
+    void checkout_shouldDeleteFiftyLineCartWithTwoStatements() {
+        // Given
+        UUID cartId = transactionTemplate.execute(status -> {
+            Cart cart = new Cart();
+            cart.setSessionId("batching-session");
+            productRepository.findAllById(productIds)
+                .forEach(product -> cart.getItems().add(new CartItem(null, product, 2, cart)));
+            return cartRepository.save(cart).getId();
+        });
+        Statistics statistics = statistics();
+        CountingDataSource statements = countStatements();
+
+        // When
+        CheckoutResult result = cartService.checkout(cartId);
+
+        // Then: one select for the cart graph, one batch of stock decrements, then a bulk delete for the lines
+        // and one for the cart
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(statistics.getEntityDeleteCount()).isZero();
+        assertThat(statements.executed()).isEqualTo(4);
+        assertThat(productRepository.findAllById(productIds)).allMatch(product -> product.getStock() == 8);
+    }
+
+    @Test
+    void addProductsToCart_shouldInsertFiftyLinesInOneBatch() {
+        // Given
+        UUID cartId = cartService.resolveCartIdBySession("batching-session");
+        List<AddToCartRequest> lines = new ArrayList<>();
+        for (UUID productId : productIds) {
+            AddToCartRequest line = new AddToCartRequest();
+            line.setProductId(productId);
+            line.setQuantity(1);
+            lines.add(line);
+        }
+        Statistics statistics = statistics();
+        CountingDataSource statements = countStatements();
+
+        // When
+        cartService.addProductsToCart(cartId, lines);
+
+        // Then: cart graph, product lookup, one insert batch, the activity touch, and the line view read back
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(LINES);
+        assertThat(statements.executed()).isEqualTo(5);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private CountingDataSource countStatements() {
+        CountingDataSource counting = (CountingDataSource) dataSource;
+        counting.reset();
+        return counting;
+    }
+
+    @TestConfiguration
+    static class StatementCounting {
+
+        @Bean
+        static BeanPostProcessor countingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource target && !(bean instanceof CountingDataSource)
+                        ? new CountingDataSource(target)
+                        : bean;
+                }
+            };
+        }
+    }
+
+    // Counts statement executions on the thread that last called reset(), so scheduled jobs running alongside
+    // (journal projection, hot-SKU refills) do not disturb the figure
+    static class CountingDataSource extends DelegatingDataSource {
+
+        private final AtomicInteger executed = new AtomicInteger();
+        private volatile Thread counted;
+
+        CountingDataSource(DataSource target) {
+            super(target);
+        }
+
+        void reset() {
+            counted = Thread.currentThread();
+            executed.set(0);
+        }
+
+        int executed() {
+            return executed.get();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return counting(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return counting(super.getConnection(username, password));
+        }
+
+        private Connection counting(Connection connection) {
+            return proxy(Connection.class, connection, result -> {
+                if (result instanceof CallableStatement statement) {
+                    return countingStatement(CallableStatement.class, statement);
+                }
+                if (result instanceof PreparedStatement statement) {
+                    return countingStatement(PreparedStatement.class, statement);
+                }
+                if (result instanceof Statement statement) {
+                    return countingStatement(Statement.class, statement);
+                }
+                return result;
+            }, false);
+        }
+
+        private <T extends Statement> T countingStatement(Class<T> type, T statement) {
+            return proxy(type, statement, result -> result, true);
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> T proxy(Class<T> type, T target, UnaryOperator<Object> wrapResult, boolean count) {
+            return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+                if (count && method.getName().startsWith("execute") && Thread.currentThread() == counted) {
+                    executed.incrementAndGet();
+                }
+                try {
+                    return wrapResult.apply(method.invoke(target, args));
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+        }
+    }
+}
@@ -6,23 +6,41 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import com.example.marketplace.cache.CheckoutIdempotencyCache;
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.AddToCartRequest;
+import com.example.marketplace.dto.CartLineView;
+import com.example.marketplace.dto.CartSummary;
+import com.example.marketplace.dto.CartView;
 import com.example.marketplace.dto.CheckoutResult;
 import com.example.marketplace.entity.Cart;
 import com.example.marketplace.entity.CartItem;
 import com.example.marketplace.entity.Product;
 import com.example.marketplace.exception.NotFoundException;
+import com.example.marketplace.inventory.HotSkuInventory;
+import com.example.marketplace.order.OrderJournal;
+import com.example.marketplace.order.PlacedOrder;
 import com.example.marketplace.repository.CartItemRepository;
 import com.example.marketplace.repository.CartRepository;
-import com.example.marketplace.repository.ProductRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+import com.example.marketplace.retry.OptimisticRetry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -31,7 +49,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @ExtendWith(MockitoExtension.class)
 class CartServiceImplTest {
@@ -39,15 +63,37 @@ class CartServiceImplTest {
     @Mock
     private CartRepository cartRepository;
 
-    @Mock
-    private ProductRepository productRepository;
-
     @Mock
     private CartItemRepository cartItemRepository;
 
     @Mock
     private ProductService productService;
 
+    @Spy
+    private SessionCartCache sessionCartCache = new SessionCartCache(100, Duration.ofMinutes(30), new SimpleMeterRegistry());
+
+    @Spy
+    private StockReservationLedger stockReservationLedger = new StockReservationLedger(Duration.ofMinutes(15));
+
+    @Spy
+    private CheckoutIdempotencyCache checkoutIdempotencyCache =
+        new CheckoutIdempotencyCache(100, Duration.ofHours(24), new SimpleMeterRegistry());
+
+    @Spy
+    private OptimisticRetry optimisticRetry = new OptimisticRetry(3, Duration.ZERO, Duration.ZERO, new SimpleMeterRegistry());
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+
+    @Mock
+    private CheckoutCoalescer checkoutCoalescer;
+
+    @Mock
+    private OrderJournal orderJournal;
+
+    @Mock
+    private HotSkuInventory hotSkuInventory;
+
     @InjectMocks
     private CartServiceImpl cartService;
 
@@ -64,42 +110,41 @@ class CartServiceImplTest {
         cart.setId(cartId);
         cart.setSessionId("test-session");
         cart.setItems(new HashSet<>());
-        product = new Product(productId, "Test Product", 10.0, "Description", 20);
+        product = new Product(productId, "Test Product", 1000, "Description", 20);
     }
 
     @Test
-    void addProductToCart_shouldAddNewItem_whenCartIsEmpty() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        when(productRepository.findById(productId)).thenReturn(Optional.of(product));
-        when(cartItemRepository.findByCartAndProduct(cart, product)).thenReturn(Optional.empty());
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-
-        cartService.addProductToCart(cartId, productId, 5);
-
-        verify(cartItemRepository).save(argThat(item ->
-            item.getCart().equals(cart) &&
-            item.getProduct().equals(product) &&
-            item.getQuantity() == 5
-        ));
+    void addProductToCart_shouldHoldStock_upsertLine_andReturnCartView() {
+        List<CartLineView> lines = List.of(lineOf(product, 5));
+        when(productService.findById(productId)).thenReturn(product);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(5), eq(0))).thenReturn(1);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(lines);
+
+        CartView result = cartService.addProductToCart(cartId, productId, 5);
+
+        assertEquals(cartId, result.getId());
+        assertEquals(lines, result.getItems());
+        assertEquals(5, result.getTotalQuantity());
+        assertEquals(5000, result.getTotal());
+        assertEquals(5, stockReservationLedger.held(productId));
+        verify(cartItemRepository, never()).save(any());
+        verify(cartRepository, never()).findWithItemsAndProductsById(any());
+        verify(cartRepository).touch(eq(cartId), any());
     }
 
     @Test
-    void addProductToCart_shouldUpdateQuantity_whenItemExists() {
-        CartItem existingItem = new CartItem();
-        existingItem.setId(UUID.randomUUID());
-        existingItem.setCart(cart);
-        existingItem.setProduct(product);
-        existingItem.setQuantity(2);
-
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        when(productRepository.findById(productId)).thenReturn(Optional.of(product));
-        when(cartItemRepository.findByCartAndProduct(cart, product)).thenReturn(Optional.of(existingItem));
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-
-        cartService.addProductToCart(cartId, productId, 3);
-
-        assertEquals(5, existingItem.getQuantity());
-        verify(cartItemRepository).save(existingItem);
+    void addProductToCart_shouldRetryOnce_whenParallelAddInsertedSameLine() {
+        when(productService.findById(productId)).thenReturn(product);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(3), eq(0)))
+            .thenThrow(new DataIntegrityViolationException("uk_cart_items_cart_product"))
+            .thenReturn(1);
+        when(cartRepository.existsById(cartId)).thenReturn(true);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 3)));
+
+        CartView result = cartService.addProductToCart(cartId, productId, 3);
+
+        assertEquals(3, result.getTotalQuantity());
+        verify(cartItemRepository, times(2)).upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(3), eq(0));
     }
 
     @Test
@@ -107,65 +152,397 @@ class CartServiceImplTest {
         Exception exception = assertThrows(IllegalArgumentException.class, () ->
             cartService.addProductToCart(cartId, productId, 0));
         assertEquals("数量は0より大きい値である必要があります。", exception.getMessage());
+        verifyNoInteractions(cartItemRepository);
     }
 
     @Test
-    void addProductToCart_shouldThrowException_whenCartNotFound() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.empty());
+    void addProductToCart_shouldThrowException_andReleaseHold_whenCartNotFound() {
+        when(productService.findById(productId)).thenReturn(product);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(1), eq(0)))
+            .thenThrow(new DataIntegrityViolationException("fk_cart_items_cart"));
+        when(cartRepository.existsById(cartId)).thenReturn(false);
         assertThrows(NotFoundException.class, () ->
             cartService.addProductToCart(cartId, productId, 1));
+        assertEquals(0, stockReservationLedger.held(productId));
+        assertFalse(stockReservationLedger.holdsFor(cartId));
     }
 
     @Test
     void addProductToCart_shouldThrowException_whenProductNotFound() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        when(productRepository.findById(productId)).thenReturn(Optional.empty());
+        when(productService.findById(productId)).thenThrow(new NotFoundException(productId + " の商品が見つかりません。"));
         assertThrows(NotFoundException.class, () ->
             cartService.addProductToCart(cartId, productId, 1));
+        verifyNoInteractions(cartItemRepository);
+    }
+
+    @Test
+    void addProductToCart_shouldThrowException_whenOtherCartsHoldTheStock() {
+        product.setStock(5);
+        when(productService.findById(productId)).thenReturn(product);
+        stockReservationLedger.hold(productId, UUID.randomUUID(), 4, 5);
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+            cartService.addProductToCart(cartId, productId, 2));
+        assertEquals("在庫不足です。在庫: 1, ご要望: 2", exception.getMessage());
+        verifyNoInteractions(cartItemRepository);
     }
 
     @Test
-    void addProductToCart_shouldThrowException_whenInsufficientStock() {
+    void addProductToCart_shouldThrowException_andReleaseHold_whenCartLineExceedsPhysicalStock() {
+        // The cart's earlier line of 2 is no longer held, so only the upsert's stock guard catches it
         product.setStock(5);
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        when(productRepository.findById(productId)).thenReturn(Optional.of(product));
+        when(productService.findById(productId)).thenReturn(product);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(4), eq(0))).thenReturn(0);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 2)));
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+            cartService.addProductToCart(cartId, productId, 4));
+        assertEquals("在庫不足です。在庫: 3, ご要望: 4", exception.getMessage());
+        assertEquals(0, stockReservationLedger.held(productId));
+        verify(cartRepository, never()).touch(any(), any());
+    }
+
+    @Test
+    void addProductToCart_shouldCountHotUnitsInMemoryAsStock() {
+        // The row shows 2 because 6 units sit in the hot-SKU counters
+        product.setStock(2);
+        when(productService.findById(productId)).thenReturn(product);
+        when(hotSkuInventory.allotted(productId)).thenReturn(6L);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(5), eq(6))).thenReturn(1);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 5)));
+
+        CartView result = cartService.addProductToCart(cartId, productId, 5);
+
+        assertEquals(5, result.getTotalQuantity());
+        assertEquals(5, stockReservationLedger.held(productId));
+    }
+
+    @Test
+    void addProductsToCart_shouldResolveProductsOnce_incrementExistingLine_andSaveNewLinesTogether() {
+        Product other = new Product(UUID.randomUUID(), "Other Product", 500, "Description", 10);
+        CartItem existingItem = new CartItem(UUID.randomUUID(), product, 2, cart);
+        cart.getItems().add(existingItem);
+        List<CartLineView> lines = List.of(lineOf(other, 4), lineOf(product, 6));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.findAllById(any())).thenReturn(List.of(product, other));
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(lines);
+        when(cartRepository.touchAtVersion(eq(cartId), eq(cart.getVersion()), any())).thenReturn(1);
+
+        CartView result = cartService.addProductsToCart(cartId, List.of(
+            addRequest(productId, 3), addRequest(other.getId(), 4), addRequest(productId, 1)));
+
+        assertEquals(lines, result.getItems());
+        assertEquals(6, existingItem.getQuantity());
+        verify(productService, times(1)).findAllById(Set.of(productId, other.getId()));
+        verify(cartItemRepository, times(1)).saveAll(argThat(items -> {
+            List<CartItem> saved = new ArrayList<>();
+            items.forEach(saved::add);
+            return saved.size() == 1 && saved.get(0).getProduct() == other && saved.get(0).getQuantity() == 4;
+        }));
+        verify(productService, never()).findById(any());
+        assertEquals(4, stockReservationLedger.held(productId));
+        assertEquals(4, stockReservationLedger.held(other.getId()));
+        verify(cartRepository).touchAtVersion(eq(cartId), eq(cart.getVersion()), any());
+    }
+
+    @Test
+    void addProductsToCart_shouldRetryOnFreshCart_andKeepOnlyOneSetOfHolds_whenVersionCheckFails() {
+        Cart reloaded = new Cart();
+        reloaded.setId(cartId);
+        reloaded.setItems(new HashSet<>());
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart), Optional.of(reloaded));
+        when(productService.findAllById(any())).thenReturn(List.of(product));
+        when(cartRepository.touchAtVersion(eq(cartId), eq(cart.getVersion()), any())).thenReturn(0, 1);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 3)));
+
+        CartView result = cartService.addProductsToCart(cartId, List.of(addRequest(productId, 3)));
+
+        assertEquals(3, result.getTotalQuantity());
+        assertEquals(3, stockReservationLedger.held(productId));
+        verify(cartRepository, times(2)).findWithItemsAndProductsById(cartId);
+    }
+
+    @Test
+    void addProductsToCart_shouldRetry_whenParallelAddInsertedSameLineFirst() {
+        Cart reloaded = new Cart();
+        reloaded.setId(cartId);
+        reloaded.setItems(new HashSet<>(Set.of(new CartItem(UUID.randomUUID(), product, 2, reloaded))));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart), Optional.of(reloaded));
+        when(productService.findAllById(any())).thenReturn(List.of(product));
+        doThrow(new DataIntegrityViolationException("uk_cart_items_cart_product")).doNothing()
+            .when(cartItemRepository).flush();
+        when(cartRepository.touchAtVersion(eq(cartId), eq(reloaded.getVersion()), any())).thenReturn(1);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 5)));
+
+        CartView result = cartService.addProductsToCart(cartId, List.of(addRequest(productId, 3)));
+
+        assertEquals(5, result.getTotalQuantity());
+        assertEquals(5, reloaded.getItems().iterator().next().getQuantity());
+        assertEquals(3, stockReservationLedger.held(productId));
+        verify(cartRepository, times(2)).findWithItemsAndProductsById(cartId);
+    }
+
+    @Test
+    void addProductsToCart_shouldGiveUp_afterMaxAttemptsConflict() {
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.findAllById(any())).thenReturn(List.of(product));
+
+        assertThrows(OptimisticLockingFailureException.class,
+            () -> cartService.addProductsToCart(cartId, List.of(addRequest(productId, 3))));
+
+        assertEquals(0, stockReservationLedger.held(productId));
+        verify(cartRepository, times(3)).touchAtVersion(eq(cartId), eq(cart.getVersion()), any());
+    }
+
+    @Test
+    void addProductsToCart_shouldGiveBackBatchHolds_whenAnyLineCannotBeHeld() {
+        Product other = new Product(UUID.randomUUID(), "Other Product", 500, "Description", 3);
+        stockReservationLedger.hold(other.getId(), UUID.randomUUID(), 2, 3);
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.findAllById(any())).thenReturn(List.of(product, other));
+
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+            cartService.addProductsToCart(cartId, List.of(addRequest(productId, 1), addRequest(other.getId(), 2))));
+
+        assertEquals("在庫不足です。在庫: 1, ご要望: 2", exception.getMessage());
+        assertEquals(0, stockReservationLedger.held(productId));
+        assertEquals(2, stockReservationLedger.held(other.getId()));
+        verify(cartItemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void addProductsToCart_shouldWriteNothing_whenAnyLineExceedsStock() {
+        Product other = new Product(UUID.randomUUID(), "Other Product", 500, "Description", 3);
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.findAllById(any())).thenReturn(List.of(product, other));
 
         Exception exception = assertThrows(IllegalArgumentException.class, () ->
-            cartService.addProductToCart(cartId, productId, 10));
-        assertTrue(exception.getMessage().contains("在庫不足です。"));
+            cartService.addProductsToCart(cartId, List.of(addRequest(productId, 1), addRequest(other.getId(), 4))));
+
+        assertEquals("在庫不足です。在庫: 3, ご要望: 4", exception.getMessage());
+        assertTrue(cart.getItems().isEmpty());
+        verify(cartItemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void addProductsToCart_shouldThrowException_whenProductNotFound() {
+        UUID missingId = UUID.randomUUID();
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.findAllById(any())).thenReturn(List.of(product));
+
+        Exception exception = assertThrows(NotFoundException.class, () ->
+            cartService.addProductsToCart(cartId, List.of(addRequest(productId, 1), addRequest(missingId, 1))));
+
+        assertEquals(missingId + " の商品が見つかりません。", exception.getMessage());
+        verify(cartItemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void addProductsToCart_shouldThrowException_whenNoLinesOrQuantityIsZero() {
+        assertThrows(IllegalArgumentException.class, () -> cartService.addProductsToCart(cartId, List.of()));
+        assertThrows(IllegalArgumentException.class, () ->
+            cartService.addProductsToCart(cartId, List.of(addRequest(productId, 0))));
+        verifyNoInteractions(cartRepository, productService);
+    }
+
+    private AddToCartRequest addRequest(UUID productId, int quantity) {
+        AddToCartRequest request = new AddToCartRequest();
+        request.setProductId(productId);
+        request.setQuantity(quantity);
+        return request;
+    }
+
+    private CartLineView lineOf(Product product, int quantity) {
+        return new CartLineView(UUID.randomUUID(), product.getId(), product.getName(), product.getPrice(), quantity);
     }
 
     // Tests for getOrCreateCartBySession
     @Test
     void getOrCreateCartBySession_shouldReturnExistingCart() {
-        when(cartRepository.findBySessionId("test-session")).thenReturn(List.of(cart));
-        Cart result = cartService.getOrCreateCartBySession("test-session");
-        assertEquals(cart, result);
-        verify(cartRepository, never()).save(any());
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 1)));
+
+        CartView result = cartService.getOrCreateCartBySession("test-session");
+
+        assertEquals(cartId, result.getId());
+        assertEquals(1, result.getItems().size());
+        verify(cartRepository, never()).insertCart(any(), any(), any());
     }
 
     @Test
     void getOrCreateCartBySession_shouldCreateNewCart() {
-        when(cartRepository.findBySessionId("new-session")).thenReturn(List.of());
-        when(cartRepository.save(any(Cart.class))).thenAnswer(invocation -> {
-            Cart savedCart = invocation.getArgument(0);
-            savedCart.setId(UUID.randomUUID()); // Simulate DB generating an ID
-            return savedCart;
-        });
+        when(cartRepository.findIdBySessionId("new-session")).thenReturn(Optional.empty());
+        when(cartItemRepository.findLineViewsByCartId(any())).thenReturn(List.of());
+        when(cartRepository.existsById(any())).thenReturn(true);
+
+        CartView result = cartService.getOrCreateCartBySession("new-session");
+
+        assertNotNull(result.getId());
+        assertTrue(result.getItems().isEmpty());
+        verify(cartRepository, times(1)).insertCart(eq(result.getId()), eq("new-session"), any());
+        assertEquals(Optional.of(result.getId()), sessionCartCache.get("new-session"));
+    }
+
+    @Test
+    void getOrCreateCartBySession_shouldReturnConcurrentlyCreatedCart_whenInsertLosesRace() {
+        when(cartRepository.findIdBySessionId("test-session"))
+            .thenReturn(Optional.empty())
+            .thenReturn(Optional.of(cartId));
+        when(cartRepository.insertCart(any(), eq("test-session"), any()))
+            .thenThrow(new DataIntegrityViolationException("uk_carts_session_id"));
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 1)));
+
+        CartView result = cartService.getOrCreateCartBySession("test-session");
+
+        assertEquals(cartId, result.getId());
+    }
+
+    @Test
+    void getOrCreateCartBySession_shouldRememberCartId_andSkipSessionLookupNextTime() {
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 1)));
+
+        cartService.getOrCreateCartBySession("test-session");
+        CartView result = cartService.getOrCreateCartBySession("test-session");
+
+        assertEquals(cartId, result.getId());
+        verify(cartRepository, times(1)).findIdBySessionId("test-session");
+    }
+
+    @Test
+    void getOrCreateCartBySession_shouldFallBackToSessionLookup_whenCachedCartIsGone() {
+        UUID staleCartId = UUID.randomUUID();
+        sessionCartCache.put("test-session", staleCartId);
+        when(cartItemRepository.findLineViewsByCartId(staleCartId)).thenReturn(List.of());
+        when(cartRepository.existsById(staleCartId)).thenReturn(false);
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 1)));
+
+        CartView result = cartService.getOrCreateCartBySession("test-session");
+
+        assertEquals(cartId, result.getId());
+        assertEquals(Optional.of(cartId), sessionCartCache.get("test-session"));
+    }
+
+    @Test
+    void resolveCartIdBySession_shouldNotQueryDatabase_whenSessionIsCached() {
+        sessionCartCache.put("test-session", cartId);
+
+        UUID result = cartService.resolveCartIdBySession("test-session");
+
+        assertEquals(cartId, result);
+        verifyNoInteractions(cartRepository);
+    }
+
+    @Test
+    void resolveCartIdBySession_shouldLookUpIdOnly_whenSessionIsNotCached() {
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+
+        UUID result = cartService.resolveCartIdBySession("test-session");
+
+        assertEquals(cartId, result);
+        assertEquals(Optional.of(cartId), sessionCartCache.get("test-session"));
+        verify(cartRepository, never()).findWithItemsAndProductsById(any());
+    }
+
+    @Test
+    void addProductToCartBySession_shouldResolveSessionAgain_whenCachedCartIsGone() {
+        UUID staleCartId = UUID.randomUUID();
+        sessionCartCache.put("test-session", staleCartId);
+        when(productService.findById(productId)).thenReturn(product);
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(staleCartId), eq(productId), eq(2), eq(0)))
+            .thenThrow(new DataIntegrityViolationException("fk_cart_items_cart"));
+        when(cartRepository.existsById(staleCartId)).thenReturn(false);
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartItemRepository.upsertQuantity(any(UUID.class), eq(cartId), eq(productId), eq(2), eq(0))).thenReturn(1);
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of(lineOf(product, 2)));
+
+        CartView result = cartService.addProductToCartBySession("test-session", productId, 2);
+
+        assertEquals(cartId, result.getId());
+        assertEquals(Optional.of(cartId), sessionCartCache.get("test-session"));
+        assertEquals(2, stockReservationLedger.held(productId));
+    }
+
+    @Test
+    void addProductToCartBySession_shouldPassOnNotFound_whenTheSessionsCartIsCurrent() {
+        sessionCartCache.put("test-session", cartId);
+        when(productService.findById(productId)).thenThrow(new NotFoundException(productId + " の商品が見つかりません。"));
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+
+        assertThrows(NotFoundException.class, () -> cartService.addProductToCartBySession("test-session", productId, 1));
+        verify(productService, times(1)).findById(productId);
+    }
+
+    @Test
+    void clearCartBySession_shouldResolveSessionAgain_whenCachedCartIsGone() {
+        UUID staleCartId = UUID.randomUUID();
+        sessionCartCache.put("test-session", staleCartId);
+        when(cartItemRepository.deleteAllByCartId(staleCartId)).thenReturn(0);
+        when(cartRepository.existsById(staleCartId)).thenReturn(false);
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartItemRepository.deleteAllByCartId(cartId)).thenReturn(2);
+
+        CartView result = cartService.clearCartBySession("test-session");
+
+        assertEquals(cartId, result.getId());
+        verify(cartRepository).touch(eq(cartId), any());
+        verify(cartRepository, never()).touch(eq(staleCartId), any());
+    }
+
+    @Test
+    void getCartSummary_shouldThrowException_whenCartNotFound() {
+        when(cartRepository.findSummaryById(cartId)).thenReturn(Optional.empty());
+        assertThrows(NotFoundException.class, () -> cartService.getCartSummary(cartId));
+    }
 
-        Cart result = cartService.getOrCreateCartBySession("new-session");
+    @Test
+    void getCartSummaryBySession_shouldQueryAggregateOnly_whenSessionIsCached() {
+        CartSummary summary = new CartSummary(cartId, 2, 5, 2750);
+        sessionCartCache.put("test-session", cartId);
+        when(cartRepository.findSummaryById(cartId)).thenReturn(Optional.of(summary));
+
+        assertEquals(summary, cartService.getCartSummaryBySession("test-session"));
+        verify(cartRepository, never()).findWithItemsAndProductsById(any());
+        verifyNoInteractions(cartItemRepository);
+    }
 
-        assertNotNull(result);
-        assertEquals("new-session", result.getSessionId());
-        verify(cartRepository, times(1)).save(any(Cart.class));
+    @Test
+    void getCartSummaryBySession_shouldResolveSessionAgain_whenCachedCartIsGone() {
+        UUID staleCartId = UUID.randomUUID();
+        CartSummary summary = new CartSummary(cartId, 0, 0, 0);
+        sessionCartCache.put("test-session", staleCartId);
+        when(cartRepository.findSummaryById(staleCartId)).thenReturn(Optional.empty());
+        when(cartRepository.findIdBySessionId("test-session")).thenReturn(Optional.of(cartId));
+        when(cartRepository.findSummaryById(cartId)).thenReturn(Optional.of(summary));
+
+        assertEquals(summary, cartService.getCartSummaryBySession("test-session"));
+        assertEquals(Optional.of(cartId), sessionCartCache.get("test-session"));
     }
 
     // Tests for getCart
     @Test
-    void getCart_shouldReturnCart_whenIdExists() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        Cart result = cartService.getCart(cartId);
-        assertEquals(cart, result);
+    void getCart_shouldReturnCartView_whenIdExists() {
+        when(cartItemRepository.findLineViewsByCartId(cartId))
+            .thenReturn(List.of(lineOf(product, 2), lineOf(new Product(UUID.randomUUID(), "Cable", 250, "", 9), 3)));
+
+        CartView result = cartService.getCart(cartId);
+
+        assertEquals(cartId, result.getId());
+        assertEquals(5, result.getTotalQuantity());
+        assertEquals(2750, result.getTotal());
+        verify(cartRepository, never()).existsById(any());
+    }
+
+    @Test
+    void getCart_shouldReturnEmptyView_whenCartHasNoLines() {
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of());
+        when(cartRepository.existsById(cartId)).thenReturn(true);
+
+        CartView result = cartService.getCart(cartId);
+
+        assertTrue(result.getItems().isEmpty());
+        assertEquals(0, result.getTotal());
     }
 
     @Test
@@ -175,10 +552,43 @@ class CartServiceImplTest {
 
     @Test
     void getCart_shouldThrowException_whenIdNotFound() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.empty());
+        when(cartItemRepository.findLineViewsByCartId(cartId)).thenReturn(List.of());
+        when(cartRepository.existsById(cartId)).thenReturn(false);
         assertThrows(NotFoundException.class, () -> cartService.getCart(cartId));
     }
 
+    // Tests for clearCart
+    @Test
+    void clearCart_shouldBulkDeleteLines_andReturnEmptyCart() {
+        when(cartItemRepository.deleteAllByCartId(cartId)).thenReturn(3);
+
+        CartView result = cartService.clearCart(cartId);
+
+        assertEquals(cartId, result.getId());
+        assertTrue(result.getItems().isEmpty());
+        assertEquals(0, result.getTotal());
+        verify(cartRepository, never()).existsById(any());
+        verify(cartRepository, never()).deleteCartByIdAndVersion(any(), anyLong());
+        verify(cartRepository).touch(eq(cartId), any());
+        verify(stockReservationLedger).releaseCart(cartId);
+    }
+
+    @Test
+    void clearCart_shouldReturnEmptyCart_whenAlreadyEmpty() {
+        when(cartItemRepository.deleteAllByCartId(cartId)).thenReturn(0);
+        when(cartRepository.existsById(cartId)).thenReturn(true);
+
+        assertTrue(cartService.clearCart(cartId).getItems().isEmpty());
+    }
+
+    @Test
+    void clearCart_shouldThrowException_whenCartNotFound() {
+        when(cartItemRepository.deleteAllByCartId(cartId)).thenReturn(0);
+        when(cartRepository.existsById(cartId)).thenReturn(false);
+
+        assertThrows(NotFoundException.class, () -> cartService.clearCart(cartId));
+    }
+
     // Tests for checkout
     @Test
     void checkout_shouldSucceed_whenCartIsValid() {
@@ -189,27 +599,143 @@ class CartServiceImplTest {
         item.setQuantity(2);
         cart.setItems(Set.of(item));
 
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
-        doNothing().when(productService).reduceStock(productId, 2);
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of());
+        when(cartRepository.deleteCartByIdAndVersion(cartId, cart.getVersion())).thenReturn(1);
 
         CheckoutResult result = cartService.checkout(cartId);
 
         assertTrue(result.isSuccess());
-        verify(productService, times(1)).reduceStock(productId, 2);
-        verify(cartRepository, times(1)).delete(cart);
+        assertEquals(2000, result.getTotal());
+        assertNotNull(result.getOrderId());
+        verify(orderJournal).appendOnCommit(argThat((PlacedOrder order) -> order.id().equals(result.getOrderId())
+            && order.cartId().equals(cartId) && order.total() == 2000 && order.lines().size() == 1));
+        verify(productService, times(1)).reserveStock(Map.of(productId, 2));
+        verify(productService, never()).reduceStock(any(), anyInt());
+        verify(cartItemRepository, times(1)).deleteAllByCartId(cartId);
+        verify(cartRepository, times(1)).deleteCartByIdAndVersion(cartId, cart.getVersion());
+        verify(cartRepository, never()).delete(any());
+        verify(sessionCartCache).evict("test-session");
+        verify(stockReservationLedger).releaseCart(cartId);
+    }
+
+    @Test
+    void checkout_shouldRetryWithFreshRead_whenCartChangedSinceItWasRead() {
+        cart.setItems(Set.of(new CartItem(UUID.randomUUID(), product, 2, cart)));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of());
+        when(cartRepository.deleteCartByIdAndVersion(cartId, cart.getVersion())).thenReturn(0, 1);
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertTrue(result.isSuccess());
+        verify(cartRepository, times(2)).findWithItemsAndProductsById(cartId);
+        verify(productService, times(2)).reserveStock(Map.of(productId, 2));
+        verify(stockReservationLedger, times(1)).releaseCart(cartId);
+    }
+
+    @Test
+    void checkout_shouldKeepHolds_whenItRollsBackAfterDeletingTheCart() {
+        cart.setItems(Set.of(new CartItem(UUID.randomUUID(), product, 2, cart)));
+        stockReservationLedger.hold(productId, cartId, 2, 10);
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of());
+        when(cartRepository.deleteCartByIdAndVersion(cartId, cart.getVersion())).thenReturn(1);
+        doThrow(new IllegalStateException("journal unavailable")).when(orderJournal).appendOnCommit(any());
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertFalse(result.isSuccess());
+        verify(stockReservationLedger, never()).releaseCart(any());
+        verify(sessionCartCache, never()).evict(any());
+        assertEquals(2, stockReservationLedger.held(productId));
+    }
+
+    @Test
+    void checkout_shouldFail_whenEveryAttemptConflicts() {
+        cart.setItems(Set.of(new CartItem(UUID.randomUUID(), product, 2, cart)));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of());
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertFalse(result.isSuccess());
+        assertEquals("カートが同時に更新されたため、精算できませんでした。もう一度お試しください。", result.getMessage());
+        verify(cartRepository, times(3)).deleteCartByIdAndVersion(cartId, cart.getVersion());
+        verify(stockReservationLedger, never()).releaseCart(any());
+    }
+
+    @Test
+    void checkout_shouldAnswerResentKeyFromFirstResult_withoutReservingAgain() {
+        cart.setItems(Set.of(new CartItem(UUID.randomUUID(), product, 2, cart)));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of());
+        when(cartRepository.deleteCartByIdAndVersion(cartId, cart.getVersion())).thenReturn(1);
+
+        CheckoutResult first = cartService.checkout(cartId, "attempt-1");
+        CheckoutResult resent = cartService.checkout(cartId, "attempt-1");
+
+        assertTrue(first.isSuccess());
+        assertEquals(first, resent);
+        verify(productService, times(1)).reserveStock(any());
+        verify(cartRepository, times(1)).findWithItemsAndProductsById(cartId);
+    }
+
+    @Test
+    void checkout_shouldRejectBlankOrOverlongIdempotencyKey() {
+        assertThrows(IllegalArgumentException.class, () -> cartService.checkout(cartId, " "));
+        assertThrows(IllegalArgumentException.class,
+            () -> cartService.checkout(cartId, "k".repeat(CartServiceImpl.MAX_IDEMPOTENCY_KEY_LENGTH + 1)));
+        verifyNoInteractions(cartRepository, productService);
+    }
+
+    @Test
+    void checkout_shouldReturnBatchedResult_whenCoalescerIsEnabled() {
+        CheckoutResult batched = CheckoutResult.success("精算が完了しました！ご注文が確定されました。", 2000, UUID.randomUUID());
+        when(checkoutCoalescer.isEnabled()).thenReturn(true);
+        when(checkoutCoalescer.checkout(cartId)).thenReturn(Optional.of(batched));
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertEquals(batched, result);
+        verifyNoInteractions(cartRepository, productService);
+    }
+
+    @Test
+    void checkout_shouldCheckOutAlone_whenBatchWasAbandoned() {
+        when(checkoutCoalescer.isEnabled()).thenReturn(true);
+        when(checkoutCoalescer.checkout(cartId)).thenReturn(Optional.empty());
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertEquals("空のカートは精算できません。", result.getMessage());
+        verify(cartRepository).findWithItemsAndProductsById(cartId);
     }
 
     @Test
     void checkout_shouldFail_whenCartIsEmpty() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
         CheckoutResult result = cartService.checkout(cartId);
         assertFalse(result.isSuccess());
         assertEquals("空のカートは精算できません。", result.getMessage());
     }
 
+    @Test
+    void checkout_shouldFail_withoutReservingStock_whenCartTotalOverflows() {
+        product.setPrice(Long.MAX_VALUE);
+        cart.setItems(Set.of(new CartItem(UUID.randomUUID(), product, 2, cart)));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        CheckoutResult result = cartService.checkout(cartId);
+        assertFalse(result.isSuccess());
+        assertEquals("合計金額が上限を超えるため、精算できません。", result.getMessage());
+        verify(productService, never()).reserveStock(any());
+        verify(orderJournal, never()).appendOnCommit(any());
+    }
+
     @Test
     void checkout_shouldFail_whenCartNotFound() {
-        when(cartRepository.findById(cartId)).thenReturn(Optional.empty());
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.empty());
         CheckoutResult result = cartService.checkout(cartId);
         assertFalse(result.isSuccess());
         assertTrue(result.getMessage().contains("カートが見つかりません。"));
@@ -225,14 +751,62 @@ class CartServiceImplTest {
         item.setQuantity(2);
         cart.setItems(Set.of(item));
 
-        when(cartRepository.findById(cartId)).thenReturn(Optional.of(cart));
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2))).thenReturn(Set.of(productId));
 
         CheckoutResult result = cartService.checkout(cartId);
 
         assertFalse(result.isSuccess());
         assertTrue(result.getMessage().contains("在庫不足のため、精算に失敗しました。"));
         assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).contains("Test Product"));
         verify(productService, never()).reduceStock(any(), any(Integer.class));
-        verify(cartRepository, never()).delete(any());
+        verify(cartItemRepository, never()).deleteAllByCartId(any());
+        // A failed checkout keeps the cart's holds so the shopper can adjust and retry
+        verify(stockReservationLedger, never()).releaseCart(any());
+        verify(cartRepository, never()).deleteCartByIdAndVersion(any(), anyLong());
+        verify(orderJournal, never()).appendOnCommit(any());
+    }
+
+    @Test
+    void checkout_shouldReserveAllLinesInOneCall_andReportEachShortLine() {
+        UUID otherProductId = UUID.randomUUID();
+        Product otherProduct = new Product(otherProductId, "Other Product", 500, "Description", 0);
+        CartItem item = new CartItem(UUID.randomUUID(), product, 2, cart);
+        CartItem otherItem = new CartItem(UUID.randomUUID(), otherProduct, 3, cart);
+        cart.setItems(Set.of(item, otherItem));
+
+        when(cartRepository.findWithItemsAndProductsById(cartId)).thenReturn(Optional.of(cart));
+        when(productService.reserveStock(Map.of(productId, 2, otherProductId, 3))).thenReturn(Set.of(otherProductId));
+
+        CheckoutResult result = cartService.checkout(cartId);
+
+        assertFalse(result.isSuccess());
+        assertEquals(List.of("Other Product の在庫が不足しています。在庫数: 0, 必要数: 3"), result.getErrors());
+        verify(productService, times(1)).reserveStock(any());
+        verify(cartItemRepository, never()).deleteAllByCartId(any());
+        verify(cartRepository, never()).deleteCartByIdAndVersion(any(), anyLong());
+    }
+
+    // Runs callbacks with transaction synchronization active, so commit and rollback hooks fire as they would
+    // against a real database
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, org.springframework.transaction.TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
     }
 }
@@ -0,0 +1,174 @@
+package com.example.marketplace.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.cache.CheckoutIdempotencyCache;
+import com.example.marketplace.cache.SessionCartCache;
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.UuidV7Generator;
+import com.example.marketplace.inventory.HotSkuInventory;
+import com.example.marketplace.order.OrderJournal;
+import com.example.marketplace.repository.CartItemRepository;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.reservation.StockReservationLedger;
+import com.example.marketplace.retry.OptimisticRetry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Checks out one-line carts of a single product from many threads at once, first one transaction per checkout,
+// then through the coalescer. Both services share the same beans; only the coalescer differs.
+// Excluded from the normal build; run with: mvn test -Pbenchmark
+@Tag("benchmark")
+@SpringBootTest(properties = {
+    "marketplace.checkout-coalescer.enabled=true",
+    "logging.level.root=INFO",
+    "spring.jpa.show-sql=false"
+})
+class CheckoutCoalescerBenchmarkTest {
+
+    private static final UUID PRODUCT_ID = UUID.fromString("01900000-0000-7000-8000-000000000003");
+    private static final int CARTS = 2_000;
+    private static final int THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+
+    @Autowired
+    private CartService coalesced;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private SessionCartCache sessionCartCache;
+
+    @Autowired
+    private CheckoutIdempotencyCache checkoutIdempotencyCache;
+
+    @Autowired
+    private StockReservationLedger stockReservationLedger;
+
+    @Autowired
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private OrderJournal orderJournal;
+
+    @Autowired
+    private HotSkuInventory hotSkuInventory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private CartService single;
+
+    @BeforeEach
+    void setUp() {
+        CheckoutCoalescer disabled = new CheckoutCoalescer(cartRepository, cartItemRepository, productService,
+                sessionCartCache, stockReservationLedger, transactionTemplate, orderJournal, hotSkuInventory, false,
+                Duration.ZERO, 1, new SimpleMeterRegistry());
+        single = new CartServiceImpl(cartRepository, cartItemRepository, productService, sessionCartCache,
+                checkoutIdempotencyCache, stockReservationLedger, optimisticRetry, transactionTemplate, disabled,
+                orderJournal, hotSkuInventory);
+        jdbcTemplate.update("insert into products (id, name, price, description, stock) values (?, ?, ?, ?, ?)",
+                PRODUCT_ID, "Bench coalesced", 1000, "Benchmark product", CARTS * 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from cart_items where product_id = ?", PRODUCT_ID);
+        jdbcTemplate.update("delete from carts where session_id like 'bench-%'");
+        jdbcTemplate.update("delete from products where id = ?", PRODUCT_ID);
+    }
+
+    @Test
+    void coalescer_shouldCheckOutFasterThanTransactionPerCheckout() throws Exception {
+        // Warm up the JIT, the connection pool and the statement caches on both paths
+        run(single, CARTS / 10);
+        run(coalesced, CARTS / 10);
+
+        double alone = run(single, CARTS);
+        double together = run(coalesced, CARTS);
+
+        System.out.printf("%-10s %12s (%d threads)%n", "checkout", "checkouts/s", THREADS);
+        System.out.printf("%-10s %12.0f%n", "single", alone);
+        System.out.printf("%-10s %12.0f%n", "coalesced", together);
+
+        Integer stockLeft = jdbcTemplate.queryForObject("select stock from products where id = ?", Integer.class,
+                PRODUCT_ID);
+        assertThat(stockLeft).isEqualTo(CARTS * 3 - 2 * (CARTS / 10) - 2 * CARTS);
+        assertThat(together).isGreaterThan(alone);
+    }
+
+    // Returns checkouts per second
+    private double run(CartService cartService, int carts) throws Exception {
+        List<UUID> cartIds = insertCarts(carts);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < cartIds.size(); i = next.getAndIncrement()) {
+                    CheckoutResult result = cartService.checkout(cartIds.get(i));
+                    if (!result.isSuccess()) {
+                        failed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(failed.get()).isZero();
+        return carts / seconds;
+    }
+
+    private List<UUID> insertCarts(int carts) {
+        List<UUID> cartIds = new ArrayList<>();
+        List<Object[]> cartRows = new ArrayList<>();
+        List<Object[]> itemRows = new ArrayList<>();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        for (int i = 0; i < carts; i++) {
+            UUID cartId = UuidV7Generator.next();
+            cartIds.add(cartId);
+            cartRows.add(new Object[] {cartId, "bench-" + cartId, now, now});
+            itemRows.add(new Object[] {UuidV7Generator.next(), PRODUCT_ID, 1, cartId});
+        }
+        jdbcTemplate.batchUpdate("insert into carts (id, session_id, created_at, updated_at) values (?, ?, ?, ?)", cartRows);
+        jdbcTemplate.batchUpdate("insert into cart_items (id, product_id, quantity, cart_id) values (?, ?, ?, ?)", itemRows);
+        return cartIds;
+    }
+}
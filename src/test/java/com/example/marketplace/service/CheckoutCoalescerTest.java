@@ -0,0 +1,229 @@
+package com.example.marketplace.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.entity.Cart;
+import com.example.marketplace.entity.CartItem;
+import com.example.marketplace.entity.Product;
+import com.example.marketplace.entity.Order;
+import com.example.marketplace.order.OrderProjector;
+import com.example.marketplace.repository.CartRepository;
+import com.example.marketplace.repository.OrderRepository;
+import com.example.marketplace.repository.ProductRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+// Runs concurrent checkouts through the real service with the coalescer switched on. The window is wide enough
+// that checkouts started together land in the same batch
+@SpringBootTest(properties = {
+    "marketplace.checkout-coalescer.enabled=true",
+    "marketplace.checkout-coalescer.window=PT0.2S"
+})
+class CheckoutCoalescerTest {
+
+    @Autowired
+    private CartService cartService;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private OrderProjector orderProjector;
+
+    @SpyBean
+    private ProductService productService;
+
+    private final List<UUID> productIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        transactionTemplate.executeWithoutResult(status ->
+            cartRepository.findAll().stream()
+                .filter(cart -> cart.getSessionId() != null && cart.getSessionId().startsWith("coalescer-"))
+                .forEach(cartRepository::delete));
+        productRepository.deleteAllById(productIds);
+    }
+
+    @Test
+    void checkout_shouldCommitConcurrentCheckoutsTogether() throws Exception {
+        // Given
+        UUID productId = createProduct(100);
+        List<UUID> cartIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            cartIds.add(createCart(productId, 2));
+        }
+        double batchesBefore = meterRegistry.get("marketplace.checkout-coalescer.batch-size").summary().count();
+
+        // When
+        List<CheckoutResult> results = checkOutTogether(cartIds);
+
+        // Then
+        assertThat(results).allMatch(CheckoutResult::isSuccess);
+        assertThat(results).extracting(CheckoutResult::getTotal).containsOnly(2000L);
+        assertThat(productRepository.findById(productId).orElseThrow().getStock()).isEqualTo(84);
+        assertThat(cartRepository.findAllById(cartIds)).isEmpty();
+        double batches = meterRegistry.get("marketplace.checkout-coalescer.batch-size").summary().count() - batchesBefore;
+        assertThat(batches).isLessThan(cartIds.size());
+        List<UUID> orderIds = results.stream().map(CheckoutResult::getOrderId).toList();
+        assertThat(orderIds).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(awaitProjected(orderIds)).allSatisfy(order -> assertThat(order.getTotal()).isEqualTo(2000));
+    }
+
+    @Test
+    void checkout_shouldFailOnlyTheCartsTheStockCannotCover_whenBatchRunsShort() throws Exception {
+        // Given: five carts want one unit each, but only three are left
+        UUID productId = createProduct(3);
+        List<UUID> cartIds = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            cartIds.add(createCart(productId, 1));
+        }
+        double fallbacksBefore = meterRegistry.get("marketplace.checkout-coalescer.fallbacks").counter().count();
+
+        // When
+        List<CheckoutResult> results = checkOutTogether(cartIds);
+
+        // Then: exactly the stock there was is sold, and each loser gets a lone checkout's shortage message
+        assertThat(results).filteredOn(CheckoutResult::isSuccess).hasSize(3);
+        assertThat(results).filteredOn(result -> !result.isSuccess())
+            .allSatisfy(result -> {
+                assertThat(result.getMessage()).isEqualTo("在庫不足のため、精算に失敗しました。");
+                assertThat(result.getErrors()).singleElement().asString()
+                    .startsWith("Coalesced の在庫が不足しています。").endsWith("必要数: 1");
+            });
+        assertThat(productRepository.findById(productId).orElseThrow().getStock()).isZero();
+        assertThat(cartRepository.findAllById(cartIds)).hasSize(2);
+        assertThat(meterRegistry.get("marketplace.checkout-coalescer.fallbacks").counter().count())
+            .isEqualTo(fallbacksBefore);
+    }
+
+    @Test
+    void checkout_shouldAnswerEachCartSeparately_whenBatchMixesGoodAndBadCarts() throws Exception {
+        // Given
+        UUID productId = createProduct(10);
+        UUID goodCart = createCart(productId, 1);
+        UUID emptyCart = transactionTemplate.execute(status -> {
+            Cart cart = new Cart();
+            cart.setSessionId("coalescer-" + UUID.randomUUID());
+            return cartRepository.save(cart).getId();
+        });
+        UUID missingCart = UUID.randomUUID();
+
+        // When
+        List<CheckoutResult> results = checkOutTogether(List.of(goodCart, emptyCart, missingCart, goodCart));
+
+        // Then: the repeated cart is checked out once and its second request finds it gone
+        assertThat(results.get(0).isSuccess() ^ results.get(3).isSuccess()).isTrue();
+        assertThat(results.get(1).getMessage()).isEqualTo("空のカートは精算できません。");
+        assertThat(results.get(2).getMessage()).contains("カートが見つかりません。");
+        assertThat(productRepository.findById(productId).orElseThrow().getStock()).isEqualTo(9);
+    }
+
+    @Test
+    void checkout_shouldReportBatchResults_whenAStepAfterTheCommitFails() throws Exception {
+        // Given: something the batch's transaction runs after its commit fails
+        UUID productId = createProduct(10);
+        List<UUID> cartIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            cartIds.add(createCart(productId, 1));
+        }
+        doAnswer(invocation -> {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    throw new IllegalStateException("post-commit step failed");
+                }
+            });
+            return invocation.callRealMethod();
+        }).when(productService).tryReserveStock(any());
+
+        // When
+        List<CheckoutResult> results = checkOutTogether(cartIds);
+
+        // Then: the carts were paid for, so their callers hear so instead of finding the carts gone
+        assertThat(results).allMatch(CheckoutResult::isSuccess);
+        assertThat(productRepository.findById(productId).orElseThrow().getStock()).isEqualTo(7);
+        assertThat(cartRepository.findAllById(cartIds)).isEmpty();
+    }
+
+    private List<CheckoutResult> checkOutTogether(List<UUID> cartIds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(cartIds.size());
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<CheckoutResult>> futures = new ArrayList<>();
+            for (UUID cartId : cartIds) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return cartService.checkout(cartId);
+                }));
+            }
+            start.countDown();
+            List<CheckoutResult> results = new ArrayList<>();
+            for (Future<CheckoutResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private UUID createProduct(int stock) {
+        UUID productId = productRepository.save(new Product(null, "Coalesced", 1000, "Desc", stock)).getId();
+        productIds.add(productId);
+        return productId;
+    }
+
+    private UUID createCart(UUID productId, int quantity) {
+        return transactionTemplate.execute(status -> {
+            Cart cart = new Cart();
+            cart.setSessionId("coalescer-" + UUID.randomUUID());
+            cart.getItems().add(new CartItem(null, productRepository.getReferenceById(productId), quantity, cart));
+            return cartRepository.save(cart).getId();
+        });
+    }
+
+    // The scheduled projection may already be running, in which case project() returns at once; poll until it lands
+    private List<Order> awaitProjected(List<UUID> orderIds) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            orderProjector.project();
+            List<Order> orders = orderRepository.findAllById(orderIds);
+            if (orders.size() == orderIds.size()) {
+                return orders;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("orders were not projected: " + orderIds);
+    }
+}
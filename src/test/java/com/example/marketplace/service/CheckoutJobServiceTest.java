@@ -0,0 +1,205 @@
+package com.example.marketplace.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.example.marketplace.dto.CheckoutJobView;
+import com.example.marketplace.dto.CheckoutJobView.Status;
+import com.example.marketplace.dto.CheckoutResult;
+import com.example.marketplace.exception.CheckoutQueueFullException;
+import com.example.marketplace.exception.NotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CheckoutJobServiceTest {
+
+    private CartService cartService;
+    private SimpleMeterRegistry meterRegistry;
+    private CheckoutJobService service;
+    private UUID cartId;
+    private CountDownLatch release;
+
+    @BeforeEach
+    void setUp() {
+        cartService = mock(CartService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        service = new CheckoutJobService(cartService, 2, 1, Duration.ofMinutes(15), 100, meterRegistry);
+        cartId = UUID.randomUUID();
+        release = new CountDownLatch(1);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        release.countDown();
+        service.shutdown();
+    }
+
+    @Test
+    void submit_shouldRunCheckoutOnVirtualThread_andExposeResult() throws Exception {
+        // Given
+        AtomicBoolean virtual = new AtomicBoolean();
+        when(cartService.checkout(cartId, "key-1")).thenAnswer(invocation -> {
+            virtual.set(Thread.currentThread().isVirtual());
+            return CheckoutResult.success("Checkout successful!", 2750, UUID.randomUUID());
+        });
+
+        // When
+        CheckoutJobView submitted = service.submit(cartId, "key-1");
+        CheckoutJobView finished = service.awaitJob(cartId, submitted.getId(), 5).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(Status.SUCCEEDED, finished.getStatus());
+        assertEquals(2750L, finished.getResult().getTotal());
+        assertTrue(virtual.get());
+        assertEquals(Status.SUCCEEDED, service.getJob(cartId, submitted.getId()).getStatus());
+    }
+
+    @Test
+    void submit_shouldReportFailedCheckout() throws Exception {
+        // Given
+        when(cartService.checkout(cartId, null)).thenReturn(CheckoutResult.failure("在庫不足のため、精算に失敗しました。"));
+
+        // When
+        CheckoutJobView submitted = service.submit(cartId, null);
+        CheckoutJobView finished = service.awaitJob(cartId, submitted.getId(), 5).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(Status.FAILED, finished.getStatus());
+        assertEquals("在庫不足のため、精算に失敗しました。", finished.getResult().getMessage());
+    }
+
+    @Test
+    void submit_shouldTurnRejectedRequestIntoFailedResult() throws Exception {
+        // Given
+        when(cartService.checkout(cartId, " ")).thenThrow(new IllegalArgumentException("Idempotency-Key は1文字以上255文字以下で指定してください。"));
+
+        // When
+        CheckoutJobView submitted = service.submit(cartId, " ");
+        CheckoutJobView finished = service.awaitJob(cartId, submitted.getId(), 5).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(Status.FAILED, finished.getStatus());
+        assertEquals("Idempotency-Key は1文字以上255文字以下で指定してください。", finished.getResult().getMessage());
+    }
+
+    @Test
+    void submit_shouldQueueBeyondConcurrency_andRefuseBeyondCapacity() throws Exception {
+        // Given: one checkout at a time, two jobs in flight at most
+        CountDownLatch started = new CountDownLatch(1);
+        when(cartService.checkout(cartId, null)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return CheckoutResult.success("Checkout successful!", 100, UUID.randomUUID());
+        });
+        CheckoutJobView first = service.submit(cartId, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // When
+        CheckoutJobView second = service.submit(cartId, null);
+
+        // Then
+        assertEquals(Status.RUNNING, service.getJob(cartId, first.getId()).getStatus());
+        assertEquals(Status.QUEUED, service.getJob(cartId, second.getId()).getStatus());
+        assertThrows(CheckoutQueueFullException.class, () -> service.submit(cartId, null));
+        assertEquals(1.0, meterRegistry.get("marketplace.async-checkout.rejected").counter().count());
+        assertEquals(2.0, meterRegistry.get("marketplace.async-checkout.in-flight").gauge().value());
+
+        // And once they finish there is room again
+        release.countDown();
+        assertEquals(Status.SUCCEEDED, service.awaitJob(cartId, second.getId(), 5).get(5, TimeUnit.SECONDS).getStatus());
+        CheckoutJobView third = service.submit(cartId, null);
+        assertEquals(Status.SUCCEEDED, service.awaitJob(cartId, third.getId(), 5).get(5, TimeUnit.SECONDS).getStatus());
+    }
+
+    @Test
+    void submit_shouldEvictFinishedJobsBeyondMaxResults_butKeepUnfinishedOnes() throws Exception {
+        // Given: one finished result kept at most
+        service.shutdown();
+        service = new CheckoutJobService(cartService, 3, 1, Duration.ofMinutes(15), 1, meterRegistry);
+        UUID blockedCartId = UUID.randomUUID();
+        when(cartService.checkout(cartId, null)).thenReturn(CheckoutResult.success("Checkout successful!", 100, UUID.randomUUID()));
+        when(cartService.checkout(blockedCartId, null)).thenAnswer(invocation -> {
+            release.await();
+            return CheckoutResult.success("Checkout successful!", 100, UUID.randomUUID());
+        });
+        CheckoutJobView first = service.submit(cartId, null);
+        service.awaitJob(cartId, first.getId(), 5).get(5, TimeUnit.SECONDS);
+        CheckoutJobView second = service.submit(cartId, null);
+        service.awaitJob(cartId, second.getId(), 5).get(5, TimeUnit.SECONDS);
+
+        // When
+        CheckoutJobView running = service.submit(blockedCartId, null);
+        CheckoutJobView queued = service.submit(blockedCartId, null);
+
+        // Then: eviction runs in the background, so wait until one of the finished jobs is gone
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (isReadable(first) && isReadable(second) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, (isReadable(first) ? 1 : 0) + (isReadable(second) ? 1 : 0));
+        assertTrue(isReadable(running));
+        assertTrue(isReadable(queued));
+    }
+
+    @Test
+    void awaitJob_shouldAnswerWithCurrentStatus_whenWaitRunsOut() throws Exception {
+        // Given
+        CountDownLatch started = new CountDownLatch(1);
+        when(cartService.checkout(cartId, null)).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return CheckoutResult.success("Checkout successful!", 100, UUID.randomUUID());
+        });
+        CheckoutJobView submitted = service.submit(cartId, null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // When
+        CheckoutJobView view = service.awaitJob(cartId, submitted.getId(), 1).get(5, TimeUnit.SECONDS);
+
+        // Then
+        assertEquals(Status.RUNNING, view.getStatus());
+        assertNull(view.getResult());
+    }
+
+    @Test
+    void getJob_shouldThrowNotFound_forAnotherCartsJob() {
+        // Given
+        when(cartService.checkout(cartId, null)).thenReturn(CheckoutResult.success("Checkout successful!", 100, UUID.randomUUID()));
+        CheckoutJobView submitted = service.submit(cartId, null);
+
+        // When / Then
+        assertThrows(NotFoundException.class, () -> service.getJob(UUID.randomUUID(), submitted.getId()));
+        assertThrows(NotFoundException.class, () -> service.getJob(cartId, UUID.randomUUID()));
+    }
+
+    @Test
+    void awaitJob_shouldRejectWaitOutsideRange() {
+        // Given
+        CheckoutJobView submitted = service.submit(cartId, null);
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class, () -> service.awaitJob(cartId, submitted.getId(), -1));
+        assertThrows(IllegalArgumentException.class,
+            () -> service.awaitJob(cartId, submitted.getId(), CheckoutJobService.MAX_WAIT_SECONDS + 1));
+    }
+
+    private boolean isReadable(CheckoutJobView job) {
+        try {
+            service.getJob(job.getCartId(), job.getId());
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+}
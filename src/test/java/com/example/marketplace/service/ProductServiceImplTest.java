@@ -2,27 +2,48 @@ package com.example.marketplace.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.example.marketplace.cache.ProductCache;
+import com.example.marketplace.dto.ProductLookup;
+import com.example.marketplace.dto.ProductPage;
+import com.example.marketplace.dto.ProductView;
 import com.example.marketplace.entity.Product;
 import com.example.marketplace.exception.NotFoundException;
+import com.example.marketplace.inventory.HotSkuInventory;
 import com.example.marketplace.repository.ProductRepository;
+import com.example.marketplace.search.ProductSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
 import java.util.UUID;
+import java.util.stream.Stream;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
 @ExtendWith(MockitoExtension.class)
 class ProductServiceImplTest {
@@ -30,51 +51,107 @@ class ProductServiceImplTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ProductSearchIndex productSearchIndex;
+
+    @Mock
+    private HotSkuInventory hotSkuInventory;
+
+    @Spy
+    private ProductCache productCache = new ProductCache(100, Duration.ofMinutes(5), new SimpleMeterRegistry());
+
     @InjectMocks
     private ProductServiceImpl productService;
 
     private Product product1;
     private Product product2;
+    private ProductView view1;
+    private ProductView view2;
 
     @BeforeEach
     void setUp() {
-        product1 = new Product(UUID.randomUUID(), "Laptop", 1499.99, "A powerful laptop", 12);
-        product2 = new Product(UUID.randomUUID(), "Mouse", 25.99, "Wireless mouse", 2);
+        product1 = new Product(UUID.randomUUID(), "Laptop", 149999, "A powerful laptop", 12);
+        product2 = new Product(UUID.randomUUID(), "Mouse", 2599, "Wireless mouse", 2);
+        view1 = ProductView.from(product1);
+        view2 = ProductView.from(product2);
+    }
+
+    @Test
+    void getProducts_ShouldReturnFirstPage_WhenNoCursorGiven() {
+        // Given
+        when(productRepository.findViewsOrderById(Limit.of(2))).thenReturn(Arrays.asList(view1, view2));
+
+        // When
+        ProductPage page = productService.getProducts(null, 2);
+
+        // Then
+        assertEquals(Arrays.asList(view1, view2), page.getItems());
+        assertEquals(product2.getId(), page.getNextCursor());
+        verify(productRepository, never()).findViewsAfterOrderById(any(), any());
     }
 
     @Test
-    void getAllProducts_ShouldReturnAllProducts() {
+    void getProducts_ShouldReadAfterCursor_AndEndWhenPageIsShort() {
         // Given
-        List<Product> expectedProducts = Arrays.asList(product1, product2);
-        when(productRepository.findAll()).thenReturn(expectedProducts);
+        UUID cursor = UUID.randomUUID();
+        when(productRepository.findViewsAfterOrderById(cursor, Limit.of(5))).thenReturn(List.of(view1));
 
         // When
-        List<Product> actualProducts = productService.getAllProducts();
+        ProductPage page = productService.getProducts(cursor, 5);
 
         // Then
-        assertEquals(2, actualProducts.size());
-        assertEquals(expectedProducts, actualProducts);
-        verify(productRepository, times(1)).findAll();
+        assertEquals(List.of(view1), page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getProducts_ShouldThrowException_WhenLimitIsOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> productService.getProducts(null, 0));
+        assertThrows(IllegalArgumentException.class,
+            () -> productService.getProducts(null, ProductServiceImpl.MAX_PAGE_SIZE + 1));
+        verify(productRepository, never()).findViewsOrderById(any());
     }
 
     @Test
-    void getAllProducts_ShouldReturnEmptyList_WhenNoProducts() {
+    void forEachProduct_ShouldWalkCatalogInKeysetBatches() {
         // Given
-        when(productRepository.findAll()).thenReturn(Arrays.asList());
+        List<ProductView> fullBatch = new ArrayList<>();
+        for (int i = 0; i < ProductServiceImpl.STREAM_BATCH_SIZE; i++) {
+            fullBatch.add(new ProductView(UUID.randomUUID(), "Product " + i, 1000, "Description", 1));
+        }
+        UUID lastIdOfFirstBatch = fullBatch.get(fullBatch.size() - 1).getId();
+        when(productRepository.findViewsOrderById(Limit.of(ProductServiceImpl.STREAM_BATCH_SIZE))).thenReturn(fullBatch);
+        when(productRepository.findViewsAfterOrderById(lastIdOfFirstBatch, Limit.of(ProductServiceImpl.STREAM_BATCH_SIZE)))
+            .thenReturn(List.of(view1));
+        List<ProductView> visited = new ArrayList<>();
 
         // When
-        List<Product> actualProducts = productService.getAllProducts();
+        productService.forEachProduct(visited::add);
 
         // Then
-        assertTrue(actualProducts.isEmpty());
-        verify(productRepository, times(1)).findAll();
+        assertEquals(ProductServiceImpl.STREAM_BATCH_SIZE + 1, visited.size());
+        verify(productRepository, times(1)).findViewsAfterOrderById(any(), any());
+    }
+
+    @Test
+    void forEachProduct_ShouldVisitNothing_WhenNoProducts() {
+        // Given
+        when(productRepository.findViewsOrderById(any())).thenReturn(List.of());
+
+        // When
+        List<ProductView> visited = new ArrayList<>();
+        productService.forEachProduct(visited::add);
+
+        // Then
+        assertTrue(visited.isEmpty());
+        verify(productRepository, never()).findViewsAfterOrderById(any(), any());
     }
 
     @Test
     void findById_ShouldReturnProduct_WhenProductExists() {
         // Given
         UUID productId = UUID.randomUUID();
-        Product expectedProduct = new Product(productId, "Laptop", 1499.99, "A powerful laptop", 10);
+        Product expectedProduct = new Product(productId, "Laptop", 149999, "A powerful laptop", 10);
         when(productRepository.findById(productId)).thenReturn(Optional.of(expectedProduct));
 
         // When
@@ -104,20 +181,168 @@ class ProductServiceImplTest {
     }
 
     @Test
-    void reduceStock_shouldUpdateStock_whenSufficientStockExists() {
+    void findById_ShouldServeRepeatedReadsFromCache() {
         // Given
         UUID productId = product1.getId();
-        int initialStock = product1.getStock();
-        int quantityToReduce = 5;
         when(productRepository.findById(productId)).thenReturn(Optional.of(product1));
 
         // When
-        productService.reduceStock(productId, quantityToReduce);
+        Product first = productService.findById(productId);
+        Product second = productService.findById(productId);
 
         // Then
+        assertEquals(product1.getName(), first.getName());
+        assertSame(first, second);
         verify(productRepository, times(1)).findById(productId);
-        verify(productRepository, times(1)).save(product1);
-        assertEquals(initialStock - quantityToReduce, product1.getStock());
+    }
+
+    @Test
+    void getProduct_ShouldReturnViewOfCachedProduct() {
+        // Given
+        when(productRepository.findById(product1.getId())).thenReturn(Optional.of(product1));
+
+        // When
+        ProductView view = productService.getProduct(product1.getId());
+        productService.getProduct(product1.getId());
+
+        // Then
+        assertEquals(view1, view);
+        verify(productRepository, times(1)).findById(product1.getId());
+    }
+
+    @Test
+    void getProduct_ShouldCountHotUnitsInMemoryAsStock() {
+        // Given
+        when(productRepository.findById(product1.getId())).thenReturn(Optional.of(product1));
+        when(hotSkuInventory.allotted(product1.getId())).thenReturn(7L);
+
+        // When
+        ProductView view = productService.getProduct(product1.getId());
+
+        // Then
+        assertEquals(product1.getStock() + 7, view.getStock());
+    }
+
+    @Test
+    void findAllById_ShouldQueryOnlyUncachedProducts() {
+        // Given
+        UUID missingId = UUID.randomUUID();
+        when(productRepository.findById(product1.getId())).thenReturn(Optional.of(product1));
+        productService.findById(product1.getId());
+        when(productRepository.findAllById(Set.of(product2.getId(), missingId))).thenReturn(List.of(product2));
+
+        // When
+        List<Product> products = productService.findAllById(List.of(product1.getId(), product2.getId(), missingId));
+
+        // Then
+        assertEquals(List.of("Laptop", "Mouse"), products.stream().map(Product::getName).toList());
+        verify(productRepository, times(1)).findAllById(Set.of(product2.getId(), missingId));
+    }
+
+    @Test
+    void lookupProducts_ShouldKeepRequestOrder_AndListMissingIdsOnce() {
+        // Given
+        UUID missingId = UUID.randomUUID();
+        when(productRepository.findAllById(any())).thenReturn(List.of(product1, product2));
+
+        // When
+        ProductLookup lookup = productService.lookupProducts(
+            List.of(product2.getId(), missingId, product1.getId(), missingId));
+
+        // Then
+        assertEquals(List.of("Mouse", "Laptop"), lookup.getItems().stream().map(ProductView::getName).toList());
+        assertEquals(List.of(missingId), lookup.getMissingIds());
+        verify(productRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    void lookupProducts_ShouldThrowException_WhenIdsAreEmptyOrTooMany() {
+        assertThrows(IllegalArgumentException.class, () -> productService.lookupProducts(List.of()));
+        List<UUID> tooMany = Stream.generate(UUID::randomUUID)
+            .limit(ProductServiceImpl.MAX_LOOKUP_IDS + 1).toList();
+        assertThrows(IllegalArgumentException.class, () -> productService.lookupProducts(tooMany));
+        verify(productRepository, never()).findAllById(any());
+    }
+
+    @Test
+    void reduceStock_shouldEvictCachedProduct() {
+        // Given
+        UUID productId = product1.getId();
+        when(productRepository.findById(productId)).thenReturn(Optional.of(product1));
+        productService.findById(productId);
+        when(productRepository.decrementStock(productId, 2)).thenReturn(1);
+
+        // When
+        productService.reduceStock(productId, 2);
+        productService.findById(productId);
+
+        // Then
+        verify(productCache).evict(productId);
+        verify(productRepository, times(2)).findById(productId);
+    }
+
+    @Test
+    void searchProducts_ShouldReturnProductsInRankOrder() {
+        // Given
+        when(productSearchIndex.search("パソコン", 10)).thenReturn(List.of(product2.getId(), product1.getId()));
+        when(productRepository.findViewsByIdIn(List.of(product2.getId(), product1.getId())))
+            .thenReturn(List.of(view1, view2));
+
+        // When
+        List<ProductView> results = productService.searchProducts("パソコン", 10);
+
+        // Then
+        assertEquals(List.of(view2, view1), results);
+    }
+
+    @Test
+    void searchProducts_ShouldSkipDatabase_WhenNothingMatches() {
+        // Given
+        when(productSearchIndex.search("冷蔵庫", 20)).thenReturn(List.of());
+
+        // When
+        List<ProductView> results = productService.searchProducts("冷蔵庫", 20);
+
+        // Then
+        assertTrue(results.isEmpty());
+        verify(productRepository, never()).findViewsByIdIn(any());
+    }
+
+    @Test
+    void searchProducts_ShouldThrowException_WhenQueryIsBlankOrLimitOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> productService.searchProducts(" ", 10));
+        assertThrows(IllegalArgumentException.class,
+            () -> productService.searchProducts("マウス", ProductServiceImpl.MAX_SEARCH_RESULTS + 1));
+        verify(productSearchIndex, never()).search(any(), anyInt());
+    }
+
+    @Test
+    void buildSearchIndex_ShouldIndexEveryProduct() {
+        // Given
+        when(productRepository.findViewsOrderById(any())).thenReturn(List.of(view1, view2));
+
+        // When
+        productService.buildSearchIndex();
+
+        // Then
+        verify(productSearchIndex).index(product1.getId(), product1.getName(), product1.getDescription());
+        verify(productSearchIndex).index(product2.getId(), product2.getName(), product2.getDescription());
+    }
+
+    @Test
+    void reduceStock_shouldDecrementInOneStatement_whenSufficientStockExists() {
+        // Given
+        UUID productId = product1.getId();
+        int quantityToReduce = 5;
+        when(productRepository.decrementStock(productId, quantityToReduce)).thenReturn(1);
+
+        // When
+        productService.reduceStock(productId, quantityToReduce);
+
+        // Then
+        verify(productRepository, times(1)).decrementStock(productId, quantityToReduce);
+        verify(productRepository, never()).findById(any());
+        verify(productRepository, never()).save(any());
     }
 
     @Test
@@ -125,6 +350,7 @@ class ProductServiceImplTest {
         // Given
         UUID productId = product2.getId();
         int quantityToReduce = 5; // More than available stock (2)
+        when(productRepository.decrementStock(productId, quantityToReduce)).thenReturn(0);
         when(productRepository.findById(productId)).thenReturn(Optional.of(product2));
 
         // When & Then
@@ -133,12 +359,14 @@ class ProductServiceImplTest {
 
         assertTrue(exception.getMessage().contains("在庫不足です。"));
         verify(productRepository, never()).save(any());
+        verify(productCache, never()).evict(any());
     }
 
     @Test
     void reduceStock_shouldThrowException_whenProductNotFound() {
         // Given
         UUID nonExistentProductId = UUID.randomUUID();
+        when(productRepository.decrementStock(nonExistentProductId, 1)).thenReturn(0);
         when(productRepository.findById(nonExistentProductId)).thenReturn(Optional.empty());
 
         // When & Then
@@ -157,7 +385,7 @@ class ProductServiceImplTest {
             productService.reduceStock(productId, 0));
 
         assertEquals("削減する数量は、0より大きい値である必要があります。", exception.getMessage());
-        verify(productRepository, never()).save(any());
+        verify(productRepository, never()).decrementStock(any(), anyInt());
     }
 
     @Test
@@ -170,6 +398,157 @@ class ProductServiceImplTest {
             productService.reduceStock(productId, -1));
 
         assertEquals("削減する数量は、0より大きい値である必要があります。", exception.getMessage());
-        verify(productRepository, never()).save(any());
+        verify(productRepository, never()).decrementStock(any(), anyInt());
+    }
+
+    @Test
+    void reserveStock_shouldDecrementInProductIdOrder_andEvictReservedProducts() {
+        // Given
+        Map<UUID, Integer> quantities = Map.of(product1.getId(), 2, product2.getId(), 1);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of());
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(quantities);
+
+        // Then
+        assertTrue(shortIds.isEmpty());
+        verify(productRepository).decrementStockInOrder(argThat(lines ->
+            lines instanceof SortedMap && lines.equals(quantities)));
+        verify(productCache).evict(product1.getId());
+        verify(productCache).evict(product2.getId());
+    }
+
+    @Test
+    void reserveStock_shouldReturnShortProducts_withoutEvicting() {
+        // Given
+        Map<UUID, Integer> quantities = Map.of(product1.getId(), 2, product2.getId(), 5);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of(product2.getId()));
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(quantities);
+
+        // Then
+        assertEquals(Set.of(product2.getId()), shortIds);
+        verify(productCache, never()).evict(any());
+    }
+
+    @Test
+    void tryReserveStock_shouldPutBackLinesThatWentThrough_whenAnotherLineIsShort() {
+        // Given
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of(product2.getId()));
+
+        // When
+        Set<UUID> shortIds = productService.tryReserveStock(Map.of(product1.getId(), 2, product2.getId(), 5));
+
+        // Then
+        assertEquals(Set.of(product2.getId()), shortIds);
+        verify(productRepository).incrementStock(product1.getId(), 2);
+        verify(productRepository, never()).incrementStock(eq(product2.getId()), anyInt());
+        verify(productCache, never()).evict(any());
+    }
+
+    @Test
+    void reserveStock_shouldTakeHotProductsFromMemory_andOnlyUpdateOtherRows() {
+        // Given
+        when(hotSkuInventory.isHot(any())).thenAnswer(invocation -> product1.getId().equals(invocation.getArgument(0)));
+        when(hotSkuInventory.take(product1.getId(), 2)).thenReturn(2);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of());
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(Map.of(product1.getId(), 2, product2.getId(), 1));
+
+        // Then
+        assertTrue(shortIds.isEmpty());
+        verify(productRepository).decrementStockInOrder(argThat(lines -> lines.equals(Map.of(product2.getId(), 1))));
+        verify(hotSkuInventory, never()).giveBack(any(), anyInt());
+        verify(hotSkuInventory).recordSold(Map.of(product1.getId(), 2));
+    }
+
+    @Test
+    void reserveStock_shouldGiveBackHotUnits_whenAnotherLineIsShort() {
+        // Given
+        when(hotSkuInventory.isHot(any())).thenAnswer(invocation -> product1.getId().equals(invocation.getArgument(0)));
+        when(hotSkuInventory.take(product1.getId(), 2)).thenReturn(2);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of(product2.getId()));
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(Map.of(product1.getId(), 2, product2.getId(), 5));
+
+        // Then
+        assertEquals(Set.of(product2.getId()), shortIds);
+        verify(hotSkuInventory).giveBack(product1.getId(), 2);
+        verify(hotSkuInventory, never()).recordSold(any());
+    }
+
+    @Test
+    void reserveStock_shouldTakeWhatMemoryLacks_fromTheHotProductsRow() {
+        // Given
+        when(hotSkuInventory.isHot(product1.getId())).thenReturn(true);
+        when(hotSkuInventory.take(product1.getId(), 20)).thenReturn(5);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of());
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(Map.of(product1.getId(), 20));
+
+        // Then
+        assertTrue(shortIds.isEmpty());
+        verify(productRepository).decrementStockInOrder(argThat(lines -> lines.equals(Map.of(product1.getId(), 15))));
+        verify(hotSkuInventory, never()).giveBack(any(), anyInt());
+    }
+
+    @Test
+    void reserveStock_shouldReportShortHotProduct_andGiveBackItsMemoryUnits_whenTheRowIsShortToo() {
+        // Given
+        when(hotSkuInventory.isHot(product1.getId())).thenReturn(true);
+        when(hotSkuInventory.take(product1.getId(), 20)).thenReturn(5);
+        when(productRepository.decrementStockInOrder(any())).thenReturn(Set.of(product1.getId()));
+
+        // When
+        Set<UUID> shortIds = productService.reserveStock(Map.of(product1.getId(), 20));
+
+        // Then
+        assertEquals(Set.of(product1.getId()), shortIds);
+        verify(hotSkuInventory).giveBack(product1.getId(), 5);
+        verify(productCache, never()).evict(any());
+    }
+
+    @Test
+    void reduceStock_shouldTakeHotProductFromMemory() {
+        // Given
+        when(hotSkuInventory.isHot(product1.getId())).thenReturn(true);
+        when(hotSkuInventory.take(product1.getId(), 3)).thenReturn(3);
+
+        // When
+        productService.reduceStock(product1.getId(), 3);
+
+        // Then
+        verify(productRepository, never()).decrementStock(any(), anyInt());
+        verify(hotSkuInventory).recordSold(Map.of(product1.getId(), 3));
+    }
+
+    @Test
+    void reduceStock_shouldGiveBackHotUnits_andCountThemAsStock_whenTheRowCannotCoverTheRest() {
+        // Given
+        product1.setStock(1);
+        when(hotSkuInventory.isHot(product1.getId())).thenReturn(true);
+        when(hotSkuInventory.take(product1.getId(), 5)).thenReturn(2);
+        when(productRepository.decrementStock(product1.getId(), 3)).thenReturn(0);
+        when(productRepository.findById(product1.getId())).thenReturn(Optional.of(product1));
+        when(hotSkuInventory.allotted(product1.getId())).thenReturn(2L);
+
+        // When
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+            () -> productService.reduceStock(product1.getId(), 5));
+
+        // Then
+        assertEquals("在庫不足です。在庫数: 3, ご要望数: 5", exception.getMessage());
+        verify(hotSkuInventory).giveBack(product1.getId(), 2);
+    }
+
+    @Test
+    void reserveStock_shouldThrowException_whenAnyQuantityIsNotPositive() {
+        assertThrows(IllegalArgumentException.class,
+            () -> productService.reserveStock(Map.of(product1.getId(), 0)));
+        verify(productRepository, never()).decrementStockInOrder(any());
     }
 }